@@ -0,0 +1,104 @@
+package com.gravityrd.recengclient.webshop;
+
+import com.gravityrd.receng.web.webshop.jsondto.GravityRecEngException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Isolates the records rejected by a bulk call: a rejected batch is split in halves and both halves are resent,
+ * so a single bad record costs O(log n) extra requests and the accepted halves are not resent.
+ * <p>
+ * Only the rejections of the record content are bisected, any other failure (e.g. authentication or a server error)
+ * stops the bisection at once, as resending smaller batches would not succeed either. The bisection also stops after
+ * {@link #MAX_REJECTED_RECORDS} rejected records, a batch with mostly invalid records would cost about two requests per record.
+ * </p>
+ */
+final class GravityBulkBisector {
+
+	/**
+	 * The number of rejected records after which the bisection is stopped.
+	 */
+	static final int MAX_REJECTED_RECORDS = 100;
+
+	/**
+	 * Sends a batch of records.
+	 */
+	interface BatchSender {
+		/**
+		 * @param batch the records to send
+		 * @return null if the batch was accepted, the error if the content of the batch was rejected
+		 * @throws GravityRecEngException if the batch failed for any other reason
+		 * @throws IOException if cannot connect
+		 */
+		GravityRecEngException send(Object[] batch) throws GravityRecEngException, IOException;
+	}
+
+	private final String methodName;
+	private final Object[] records;
+	private final BatchSender sender;
+	private final int maxRejectedRecords;
+	private final List<GravityBulkException.RejectedRecord> rejected = new ArrayList<>();
+	/**
+	 * The records before this index were either accepted or added to rejected.
+	 */
+	private int processedCount;
+
+	private GravityBulkBisector(String methodName, Object[] records, BatchSender sender, int maxRejectedRecords) {
+		this.methodName = methodName;
+		this.records = records;
+		this.sender = sender;
+		this.maxRejectedRecords = maxRejectedRecords;
+	}
+
+	/**
+	 * Sends the records and bisects the rejected batches.
+	 *
+	 * @param methodName the name of the bulk call, e.g. addItems
+	 * @param records    the records to send
+	 * @param sender     sends a batch of the records
+	 * @throws GravityBulkException if some of the records were rejected, or the bisection was stopped by a failure
+	 *                              or by too many rejected records after some of the records were already processed
+	 * @throws GravityRecEngException if the first request failed for another reason than the record content
+	 * @throws IOException if the first request could not connect
+	 */
+	static void send(String methodName, Object[] records, BatchSender sender) throws GravityRecEngException, IOException {
+		send(methodName, records, sender, MAX_REJECTED_RECORDS);
+	}
+
+	static void send(String methodName, Object[] records, BatchSender sender, int maxRejectedRecords) throws GravityRecEngException, IOException {
+		final GravityBulkBisector bisector = new GravityBulkBisector(methodName, records, sender, maxRejectedRecords);
+		try {
+			bisector.send(0, records.length);
+		} catch (GravityRecEngException | IOException e) {
+			if (bisector.processedCount == 0) throw e;
+			throw new GravityBulkException(methodName, records.length, bisector.rejected, bisector.processedCount, e);
+		}
+		if (!bisector.rejected.isEmpty()) {
+			throw new GravityBulkException(methodName, records.length, bisector.rejected, bisector.processedCount, null);
+		}
+	}
+
+	private void send(int from, int to) throws GravityRecEngException, IOException {
+		final Object[] batch = from == 0 && to == records.length ? records : Arrays.copyOfRange(records, from, to);
+		final GravityRecEngException rejection = sender.send(batch);
+		if (rejection != null) {
+			if (to - from == 1) {
+				rejected.add(new GravityBulkException.RejectedRecord(from, records[from], rejection));
+			} else {
+				final int middle = (from + to) >>> 1;
+				send(from, middle);
+				if (isLimitReached()) return;
+				send(middle, to);
+				if (isLimitReached()) return;
+			}
+		}
+		processedCount = to;
+	}
+
+	private boolean isLimitReached() {
+		return rejected.size() >= maxRejectedRecords;
+	}
+}
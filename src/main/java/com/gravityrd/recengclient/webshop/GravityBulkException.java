@@ -0,0 +1,111 @@
+package com.gravityrd.recengclient.webshop;
+
+import com.gravityrd.receng.web.webshop.jsondto.GravityRecEngException;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thrown by the bulk calls of {@link GravityClient} when bisection of rejected batches is enabled and some of the records
+ * were rejected, or the bisection was stopped by another failure or too many rejections. The records before {@link #getProcessedCount()} that
+ * are not listed here were accepted by the recommendation engine, the records from it on were not saved.
+ */
+public class GravityBulkException extends GravityRecEngException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String methodName;
+	private final int recordCount;
+	private final List<RejectedRecord> rejectedRecords;
+	private final int processedCount;
+
+	public GravityBulkException(String methodName, int recordCount, List<RejectedRecord> rejectedRecords) {
+		this(methodName, recordCount, rejectedRecords, recordCount, null);
+	}
+
+	/**
+	 * @param processedCount the number of records accepted or rejected before the bisection was stopped
+	 * @param cause          the failure that stopped the bisection, null if all the records were processed or the bisection
+	 *                       was stopped by too many rejected records
+	 */
+	public GravityBulkException(String methodName, int recordCount, List<RejectedRecord> rejectedRecords, int processedCount, Throwable cause) {
+		super(getMessage(methodName, recordCount, rejectedRecords, processedCount, cause), "");
+		this.methodName = methodName;
+		this.recordCount = recordCount;
+		this.rejectedRecords = Collections.unmodifiableList(rejectedRecords);
+		this.processedCount = processedCount;
+		if (cause != null) initCause(cause);
+	}
+
+	private static String getMessage(String methodName, int recordCount, List<RejectedRecord> rejectedRecords, int processedCount, Throwable cause) {
+		final StringBuilder sb = new StringBuilder(String.format("%s rejected %d of %d records", methodName, rejectedRecords.size(), recordCount));
+		if (!rejectedRecords.isEmpty()) sb.append(", first rejection: ").append(rejectedRecords.get(0).getCause().getMessage());
+		if (processedCount < recordCount) sb.append(", stopped after ").append(processedCount).append(" records");
+		if (cause != null) sb.append(": ").append(cause);
+		return sb.toString();
+	}
+
+	/**
+	 * @return the name of the bulk call, e.g. addItems
+	 */
+	public String getMethodName() {
+		return methodName;
+	}
+
+	/**
+	 * @return the number of records passed to the bulk call
+	 */
+	public int getRecordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * @return the number of records processed, the records from this index on were not saved and can be resent
+	 */
+	public int getProcessedCount() {
+		return processedCount;
+	}
+
+	/**
+	 * @return the rejected records in the order they were passed to the bulk call
+	 */
+	public List<RejectedRecord> getRejectedRecords() {
+		return rejectedRecords;
+	}
+
+	/**
+	 * A single record that the recommendation engine rejected even when sent on its own.
+	 */
+	public static final class RejectedRecord {
+		private final int index;
+		private final Object record;
+		private final GravityRecEngException cause;
+
+		public RejectedRecord(int index, Object record, GravityRecEngException cause) {
+			this.index = index;
+			this.record = record;
+			this.cause = cause;
+		}
+
+		/**
+		 * @return the position of the record in the array passed to the bulk call
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		/**
+		 * @return the rejected record, e.g. a GravityItem
+		 */
+		public Object getRecord() {
+			return record;
+		}
+
+		/**
+		 * @return the error returned for the record
+		 */
+		public GravityRecEngException getCause() {
+			return cause;
+		}
+	}
+}
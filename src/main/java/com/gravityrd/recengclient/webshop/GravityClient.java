@@ -13,7 +13,12 @@ import com.gravityrd.receng.web.webshop.jsondto.GravityScenario;
 import com.gravityrd.receng.web.webshop.jsondto.GravityUser;
 
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import org.apache.commons.codec.binary.Base64;
 
@@ -22,17 +27,23 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.ProtocolException;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The com.gravityrd.recengclient.webshop.GravityClient class can be used to send events, item and user information to
@@ -54,12 +65,17 @@ import java.util.Map.Entry;
  * 		context.scenarioId = "ITEM_PAGE";
  * 		client.getItemRecommendation("user1", context);
  * </pre>
+ * <p>
+ * The setters are not synchronized, configure the client before sharing it between threads. To serve several webshops
+ * from one application use a {@link GravityClientFactory}, its clients are immutable and thread-safe.
+ * </p>
  */
 @SuppressWarnings({ "unused", "WeakerAccess" })
 public final class GravityClient {
 
 	protected static final ObjectMapper mapper = new ObjectMapper();
 	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int MAX_ERROR_CONTENT_LENGTH = 2048;
 
 	static {
 		mapper.getFactory().configure(JsonGenerator.Feature.IGNORE_UNKNOWN, true);
@@ -89,6 +105,68 @@ public final class GravityClient {
 	 * connection without authentication.
 	 */
 	private String password;
+	/**
+	 * Whether a rejected addItems or addEvents batch is split in halves and resent to isolate the offending records.
+	 * Disabled by default.
+	 */
+	private boolean bisectRejectedBatches;
+	/**
+	 * The percentage of items requested in addition to the numberLimit while the availability index is not empty.
+	 * The default value is 20 percent.
+	 */
+	private int availabilityMargin = 20;
+	/**
+	 * The items filtered from the recommendations, see {@link #getAvailabilityIndex()}.
+	 */
+	private final GravityItemAvailabilityIndex availabilityIndex;
+	/**
+	 * The maximum number of users and cookies whose lookups are cached. The default value is 0, caching is disabled.
+	 */
+	private int lookupCacheSize;
+	/**
+	 * The time in millisecs the lookups of a user or cookie are cached for. The default value is 60000 millisecs.
+	 */
+	private int lookupCacheTtl = 60000;
+	/**
+	 * Null if caching is disabled.
+	 */
+	private GravityLookupCache lookupCache;
+	/**
+	 * Set for the clients handed out by a {@link GravityClientFactory}, their settings cannot be changed.
+	 */
+	private final boolean managed;
+	/**
+	 * Limits the concurrent requests of a tenant of a {@link GravityClientFactory}, null if unlimited. Shared with the
+	 * other clients of the tenant, like the availability index and the lookup cache.
+	 */
+	private final Semaphore quota;
+	/**
+	 * Shared by the tenants of a {@link GravityClientFactory}, null if not recorded.
+	 */
+	private final GravityClientMetrics metrics;
+
+	public GravityClient() {
+		this.availabilityIndex = new GravityItemAvailabilityIndex();
+		this.managed = false;
+		this.quota = null;
+		this.metrics = null;
+	}
+
+	GravityClient(String remoteUrl, String userName, String password, GravityClientFactory factory, GravityClientFactory.Tenant tenant) {
+		this.remoteUrl = remoteUrl;
+		this.userName = userName;
+		this.password = password;
+		this.readTimeout = factory.getReadTimeout();
+		this.bisectRejectedBatches = factory.isBisectRejectedBatches();
+		this.availabilityMargin = factory.getAvailabilityMargin();
+		this.lookupCacheSize = factory.getLookupCacheSize();
+		this.lookupCacheTtl = factory.getLookupCacheTtl();
+		this.availabilityIndex = tenant.availabilityIndex;
+		this.lookupCache = tenant.lookupCache;
+		this.managed = true;
+		this.quota = tenant.quota;
+		this.metrics = factory.getMetrics();
+	}
 
 	/**
 	 * Query the list of available recommendation scenarios for the backend
@@ -100,23 +178,91 @@ public final class GravityClient {
 		return (GravityScenario[]) sendRequest("scenarioInfo", null, null, true, GravityScenario[].class);
 	}
 
-	private Object sendRequest(String methodName, Map<String, String> queryStringParams, Object requestBody, boolean hasAnswer, Class answerClass) throws GravityRecEngException, IOException {
-
-		HttpURLConnection connection = sendRequest(methodName, queryStringParams, requestBody);
-
-		if (connection.getResponseCode() / 100 != 2) handleError(requestBody, connection);
-
-		if (hasAnswer) {
-			try (InputStream inputStream = connection.getInputStream()) {
-				final String bodyString = getBodyAsString(inputStream);
+	private Object sendRequest(String methodName, Map<String, String> queryStringParams, Object requestBody, boolean hasAnswer, final Class answerClass) throws GravityRecEngException, IOException {
+		return sendRequest(methodName, queryStringParams, requestBody, !hasAnswer ? null : new AnswerReader() {
+			@Override
+			public Object read(InputStream input) throws GravityRecEngException, IOException {
+				final String bodyString = getBodyAsString(input);
 				try {
 					return mapper.readValue(bodyString, answerClass);
 				} catch (Exception e) {
 					throw new GravityRecEngException(e.getMessage(), "");
 				}
 			}
-		} else {
-			return null;
+		});
+	}
+
+	private Object sendRequest(String methodName, Map<String, String> queryStringParams, Object requestBody, AnswerReader answerReader) throws GravityRecEngException, IOException {
+		return sendRequest(methodName, queryStringParams, requestBody, answerReader, null);
+	}
+
+	private Object sendRequest(String methodName, Map<String, String> queryStringParams, Object requestBody, AnswerReader answerReader, ResponseStatus status) throws GravityRecEngException, IOException {
+		final long start = System.nanoTime();
+		boolean acquired = false;
+		boolean success = false;
+		try {
+			acquired = acquireQuota();
+			final Object answer = readAnswer(methodName, queryStringParams, requestBody, answerReader, status);
+			success = true;
+			return answer;
+		} finally {
+			if (acquired) quota.release();
+			if (metrics != null) metrics.record(methodName, System.nanoTime() - start, success);
+		}
+	}
+
+	private Object readAnswer(String methodName, Map<String, String> queryStringParams, Object requestBody, AnswerReader answerReader, ResponseStatus status) throws GravityRecEngException, IOException {
+
+		HttpURLConnection connection = sendRequest(methodName, queryStringParams, requestBody);
+
+		final int responseCode = connection.getResponseCode();
+		if (status != null) status.responseCode = responseCode;
+		if (responseCode / 100 != 2) handleError(requestBody, connection);
+
+		try (InputStream inputStream = connection.getInputStream()) {
+			final Object answer = answerReader == null ? null : answerReader.read(inputStream);
+			// the rest of the answer is read even if not needed, otherwise the connection cannot be reused
+			drain(inputStream);
+			return answer;
+		}
+	}
+
+	/**
+	 * Reads the answer of a successful request, the answer stream is drained and closed by the caller.
+	 */
+	private interface AnswerReader {
+		Object read(InputStream input) throws GravityRecEngException, IOException;
+	}
+
+	/**
+	 * The response code of a request, for the callers that handle the errors by their kind.
+	 */
+	private static final class ResponseStatus {
+		private int responseCode;
+	}
+
+	private static void drain(InputStream input) throws IOException {
+		final byte[] buffer = new byte[2048];
+		// noinspection StatementWithEmptyBody
+		while (input.read(buffer) != -1) ;
+	}
+
+	/**
+	 * Waits up to the read timeout for a request slot of the tenant, without limit if the read timeout is 0.
+	 * @return true if a slot was acquired, false if the requests are not limited
+	 */
+	private boolean acquireQuota() throws IOException {
+		if (quota == null) return false;
+		try {
+			if (readTimeout == 0) {
+				quota.acquire();
+			} else if (!quota.tryAcquire(readTimeout, TimeUnit.MILLISECONDS)) {
+				throw new IOException("too many concurrent requests for " + remoteUrl);
+			}
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("interrupted while waiting for a request slot for " + remoteUrl);
 		}
 	}
 
@@ -133,11 +279,12 @@ public final class GravityClient {
 
 	private void handleError(Object requestBody, HttpURLConnection connection) throws IOException, GravityRecEngException {
 
-		final String responseBody = getBodyAsString(connection.getErrorStream());
-		final String b = requestBody == null ? "" : (requestBody.getClass().isArray() ? Arrays.toString((Object[]) requestBody) : requestBody.toString());
-		final String message = String.format("response code %d, for url %s | request content '%s' | answer '%s'", connection.getResponseCode(), connection.getURL(), b, responseBody);
+		final String responseBody;
+		try (InputStream errorStream = connection.getErrorStream()) {
+			responseBody = getBodyAsString(errorStream);
+		}
 		if (responseBody == null) {
-			throw new GravityRecEngException(message, "");
+			throw new GravityRecEngException(getErrorMessage(requestBody, connection, null), "");
 		} else {
 			try {
 				// noinspection UnnecessaryLocalVariable
@@ -146,12 +293,69 @@ public final class GravityClient {
 			} catch (GravityRecEngException e) {
 				throw e;
 			} catch (Exception e) {
-				throw new GravityRecEngException(message + " body " + responseBody, "");
+				throw new GravityRecEngException(getErrorMessage(requestBody, connection, responseBody) + " body " + abbreviate(responseBody), "");
 			}
 		}
 
 	}
 
+	/**
+	 * Only called once the answer could not be processed, the request body is abbreviated so that a rejected bulk call
+	 * does not render all of its records into the message.
+	 */
+	private String getErrorMessage(Object requestBody, HttpURLConnection connection, String responseBody) throws IOException {
+		return String.format("response code %d, for url %s | request content '%s' | answer '%s'", connection.getResponseCode(), connection.getURL(), describeRequest(requestBody), abbreviate(responseBody));
+	}
+
+	static String describeRequest(Object requestBody) {
+		if (requestBody == null) return "";
+		if (!(requestBody instanceof Object[])) return abbreviate(requestBody.toString());
+		final Object[] records = (Object[]) requestBody;
+		final StringBuilder sb = new StringBuilder("[");
+		int i = 0;
+		for (; i < records.length && sb.length() < MAX_ERROR_CONTENT_LENGTH; i++) {
+			if (i > 0) sb.append(", ");
+			sb.append(records[i]);
+		}
+		final boolean truncated = i < records.length || sb.length() > MAX_ERROR_CONTENT_LENGTH;
+		if (truncated) sb.setLength(Math.min(sb.length(), MAX_ERROR_CONTENT_LENGTH));
+		if (truncated) sb.append("...");
+		sb.append("] (").append(records.length).append(" records)");
+		return sb.toString();
+	}
+
+	static String abbreviate(String text) {
+		if (text == null || text.length() <= MAX_ERROR_CONTENT_LENGTH) return text;
+		return text.substring(0, MAX_ERROR_CONTENT_LENGTH) + "... (" + text.length() + " chars)";
+	}
+
+	/**
+	 * @return true if the answer rejects the content of the request, so a part of the request may be accepted
+	 */
+	static boolean isValidationError(int responseCode) {
+		return responseCode == 400 || responseCode == 422;
+	}
+
+	private void sendBulkRequest(final String methodName, final Map<String, String> queryStringParams, Object[] records) throws GravityRecEngException, IOException {
+		if (!bisectRejectedBatches || records == null || records.length < 2) {
+			sendRequest(methodName, queryStringParams, records, false, null);
+			return;
+		}
+		GravityBulkBisector.send(methodName, records, new GravityBulkBisector.BatchSender() {
+			@Override
+			public GravityRecEngException send(Object[] batch) throws GravityRecEngException, IOException {
+				final ResponseStatus status = new ResponseStatus();
+				try {
+					sendRequest(methodName, queryStringParams, batch, null, status);
+					return null;
+				} catch (GravityRecEngException e) {
+					if (isValidationError(status.responseCode)) return e;
+					throw e;
+				}
+			}
+		});
+	}
+
 	private String getBodyAsString(InputStream input) throws IOException {
 		if (input == null) return null;
 		StringBuilder sb = new StringBuilder();
@@ -182,6 +386,14 @@ public final class GravityClient {
 
 	private void sendPostRequest(Object requestBody, HttpURLConnection connection) throws IOException {
 		connection.setDoOutput(true);
+		if (requestBody instanceof GravityJsonFileChunk) {
+			final GravityJsonFileChunk chunk = (GravityJsonFileChunk) requestBody;
+			connection.setFixedLengthStreamingMode(chunk.getLength());
+			try (OutputStream outputStream = connection.getOutputStream()) {
+				chunk.writeTo(outputStream);
+			}
+			return;
+		}
 		try (OutputStream outputStream = connection.getOutputStream()) {
 			try (final DataOutputStream wr = new DataOutputStream(outputStream)) {
 				final String requestJson = mapper.writeValueAsString(requestBody);
@@ -218,6 +430,7 @@ public final class GravityClient {
 	 * @param remoteUrl the server url provided by Gravity integration team
 	 */
 	public void setRemoteUrl(String remoteUrl) {
+		checkNotManaged();
 		this.remoteUrl = remoteUrl;
 	}
 
@@ -231,6 +444,7 @@ public final class GravityClient {
 	 * @param  userName user authentication name provided by Gravity
 	 */
 	public void setUserName(String userName) {
+		checkNotManaged();
 		this.userName = userName;
 	}
 
@@ -244,6 +458,7 @@ public final class GravityClient {
 	 * @param  password user authentication password provided by Gravity
 	 */
 	public void setPassword(String password) {
+		checkNotManaged();
 		this.password = password;
 	}
 
@@ -256,9 +471,139 @@ public final class GravityClient {
 	 * @param  readTimeout wait up to this millisecond for the request answers
 	 */
 	public void setReadTimeout(int readTimeout) {
+		checkNotManaged();
 		this.readTimeout = readTimeout;
 	}
 
+	public boolean isBisectRejectedBatches() {
+		return bisectRejectedBatches;
+	}
+
+	/**
+	 * Set whether a batch rejected by {@link #addItems} or {@link #addEvents} is bisected to isolate the offending records.
+	 * The accepted records are saved and the rejected ones are reported individually by a {@link GravityBulkException}.
+	 * Only the rejections of the record content (response code 400 or 422) are bisected, other failures are thrown
+	 * as is, or as a {@link GravityBulkException} telling the records already processed if they happen during bisection.
+	 * The bisection is stopped after 100 rejected records, the rest of the batch is not sent then.
+	 * The default value is false.
+	 * @param bisectRejectedBatches true to bisect rejected batches
+	 */
+	public void setBisectRejectedBatches(boolean bisectRejectedBatches) {
+		checkNotManaged();
+		this.bisectRejectedBatches = bisectRejectedBatches;
+	}
+
+	public int getAvailabilityMargin() {
+		return availabilityMargin;
+	}
+
+	/**
+	 * Set the percentage of items requested in addition to the numberLimit of the recommendation context while
+	 * the availability index is not empty, at least one more item is requested. The unavailable items are filtered
+	 * and the result is trimmed back to the numberLimit. The default value is 20 percent.
+	 * @param availabilityMargin the margin in percent, 0 disables the filtering
+	 */
+	public void setAvailabilityMargin(int availabilityMargin) {
+		checkNotManaged();
+		if (availabilityMargin < 0) throw new IllegalArgumentException("availabilityMargin cannot be negative");
+		this.availabilityMargin = availabilityMargin;
+	}
+
+	/**
+	 * Returns the index of unavailable items of this client, feed it with the availability changes between catalog syncs.
+	 * While it is not empty, the unavailable items are filtered from the result of {@link #getItemRecommendation}.
+	 * @return the availability index, never null
+	 */
+	public GravityItemAvailabilityIndex getAvailabilityIndex() {
+		return availabilityIndex;
+	}
+
+	public int getLookupCacheSize() {
+		return lookupCacheSize;
+	}
+
+	/**
+	 * Set the maximum number of users and cookies whose {@link #getUserByUserId}, {@link #getUserByCookieId},
+	 * {@link #getEventsByUserId} and {@link #getEventsByCookieId} answers are cached. The cached answers of a user or
+	 * cookie are dropped when this client sends data concerning it, the returned objects are shared and must not be
+	 * modified. An opt out drops every cached answer, as the user may be cached by its cookies as well. The answers
+	 * cached by cookieId are not dropped by {@link #addUsers} of the user behind the cookie, they are refreshed when
+	 * they expire. The default value is 0, caching is disabled.
+	 * @param lookupCacheSize the maximum number of cached users and cookies
+	 */
+	public void setLookupCacheSize(int lookupCacheSize) {
+		checkNotManaged();
+		if (lookupCacheSize < 0) throw new IllegalArgumentException("lookupCacheSize cannot be negative");
+		this.lookupCacheSize = lookupCacheSize;
+		this.lookupCache = createLookupCache();
+	}
+
+	public int getLookupCacheTtl() {
+		return lookupCacheTtl;
+	}
+
+	/**
+	 * Set the time in millisecs the lookups of a user or cookie are cached for, counted from the first cached lookup.
+	 * The default value is 60000 millisecs.
+	 * @param lookupCacheTtl the expiration time in millisecs
+	 */
+	public void setLookupCacheTtl(int lookupCacheTtl) {
+		checkNotManaged();
+		if (lookupCacheTtl <= 0) throw new IllegalArgumentException("lookupCacheTtl must be positive");
+		this.lookupCacheTtl = lookupCacheTtl;
+		this.lookupCache = createLookupCache();
+	}
+
+	private GravityLookupCache createLookupCache() {
+		return lookupCacheSize > 0 ? new GravityLookupCache(lookupCacheSize, lookupCacheTtl) : null;
+	}
+
+	/**
+	 * Drops every cached lookup, e.g. after the users or events were modified by another client.
+	 */
+	public void clearLookupCache() {
+		final GravityLookupCache cache = lookupCache;
+		if (cache != null) cache.clear();
+	}
+
+	private Object sendCachedRequest(String identityType, String id, String lookup, String methodName, Map<String, String> queryStringParams, Class answerClass) throws GravityRecEngException, IOException {
+		final GravityLookupCache cache = lookupCache;
+		// a null id could never be invalidated, so it is not cached
+		if (cache == null || id == null) return sendRequest(methodName, queryStringParams, null, true, answerClass);
+		final String identity = identityType + ":" + id;
+		final Object cached = cache.get(identity, lookup);
+		if (cached != null) return cached;
+		final long invalidationStamp = cache.getInvalidationStamp(identity);
+		final Object answer = sendRequest(methodName, queryStringParams, null, true, answerClass);
+		cache.put(identity, lookup, answer, invalidationStamp);
+		return answer;
+	}
+
+	private void invalidateLookups(String identityType, String id) {
+		final GravityLookupCache cache = lookupCache;
+		if (cache != null && id != null) cache.invalidate(identityType + ":" + id);
+	}
+
+	private void invalidateLookups(GravityEvent[] events) {
+		if (lookupCache == null || events == null) return;
+		for (GravityEvent event : events) {
+			if (event == null) continue;
+			invalidateLookups("userId", event.userId);
+			invalidateLookups("cookieId", event.cookieId);
+		}
+	}
+
+	private void invalidateLookups(GravityUser[] users) {
+		if (lookupCache == null || users == null) return;
+		for (GravityUser user : users) {
+			if (user != null) invalidateLookups("userId", user.userId);
+		}
+	}
+
+	private void checkNotManaged() {
+		if (managed) throw new IllegalStateException("the settings of a client created by a GravityClientFactory cannot be changed");
+	}
+
 	/**
 	 * Adds events to the recommendation engine.
 	 *
@@ -268,11 +613,16 @@ public final class GravityClient {
 	 *               a synchronous call returns only after the data is saved to database.
 	 * @throws IOException if cannot connect
 	 * @throws GravityRecEngException if cannot process the answer files
+	 * @throws GravityBulkException if some of the events were rejected and {@link #setBisectRejectedBatches} is enabled
 	 */
 	public void addEvents(GravityEvent[] events, boolean async) throws GravityRecEngException, IOException {
 		HashMap<String, String> queryStringParams = new HashMap<>();
 		queryStringParams.put("async", Boolean.toString(async));
-		sendRequest("addEvents", queryStringParams, events, false, null);
+		try {
+			sendBulkRequest("addEvents", queryStringParams, events);
+		} finally {
+			invalidateLookups(events);
+		}
 	}
 
 	/**
@@ -290,7 +640,11 @@ public final class GravityClient {
 	public void addUsers(GravityUser[] users, boolean async) throws GravityRecEngException, IOException {
 		HashMap<String, String> queryStringParams = new HashMap<>();
 		queryStringParams.put("async", Boolean.toString(async));
-		sendRequest("addUsers", queryStringParams, users, false, null);
+		try {
+			sendRequest("addUsers", queryStringParams, users, false, null);
+		} finally {
+			invalidateLookups(users);
+		}
 	}
 
 	/**
@@ -303,7 +657,7 @@ public final class GravityClient {
 	public GravityUser getUserByUserId(String userId) throws GravityRecEngException, IOException {
 		HashMap<String, String> queryStringParams = new HashMap<>(1);
 		queryStringParams.put("userId", userId);
-		return (GravityUser) sendRequest("getUser", queryStringParams, null, true, GravityUser.class);
+		return (GravityUser) sendCachedRequest("userId", userId, "user", "getUser", queryStringParams, GravityUser.class);
 	}
 
 	/**
@@ -316,7 +670,7 @@ public final class GravityClient {
 	public GravityUser getUserByCookieId(String cookieId) throws GravityRecEngException, IOException {
 		HashMap<String, String> queryStringParams = new HashMap<>(1);
 		queryStringParams.put("cookieId", cookieId);
-		return (GravityUser) sendRequest("getUser", queryStringParams, null, true, GravityUser.class);
+		return (GravityUser) sendCachedRequest("cookieId", cookieId, "user", "getUser", queryStringParams, GravityUser.class);
 	}
 
 	/**
@@ -331,7 +685,7 @@ public final class GravityClient {
 		HashMap<String, String> queryStringParams = new HashMap<>(1);
 		queryStringParams.put("userId", userId);
 		if (limit > 0) queryStringParams.put("limit", String.valueOf(limit));
-		return (GravityEvent[]) sendRequest("getEvents", queryStringParams, null, true, GravityEvent[].class);
+		return (GravityEvent[]) sendCachedRequest("userId", userId, "events:" + Math.max(limit, 0), "getEvents", queryStringParams, GravityEvent[].class);
 	}
 
 	/**
@@ -346,7 +700,7 @@ public final class GravityClient {
 		HashMap<String, String> queryStringParams = new HashMap<>(1);
 		queryStringParams.put("cookieId", cookieId);
 		if (limit > 0) queryStringParams.put("limit", String.valueOf(limit));
-		return (GravityEvent[]) sendRequest("getEvents", queryStringParams, null, true, GravityEvent[].class);
+		return (GravityEvent[]) sendCachedRequest("cookieId", cookieId, "events:" + Math.max(limit, 0), "getEvents", queryStringParams, GravityEvent[].class);
 	}
 
 	/**
@@ -359,7 +713,12 @@ public final class GravityClient {
 	public void optOutUser(String userId) throws GravityRecEngException, IOException {
 		HashMap<String, String> queryStringParams = new HashMap<>(1);
 		queryStringParams.put("userId", userId);
-		sendRequest("optOut", queryStringParams, null, false, null);
+		try {
+			sendRequest("optOut", queryStringParams, null, false, null);
+		} finally {
+			// the answers cached by the cookies of the user must not outlive the opt out either
+			clearLookupCache();
+		}
 	}
 
 	/**
@@ -372,7 +731,12 @@ public final class GravityClient {
 	public void optOutCookie(String cookieId) throws GravityRecEngException, IOException {
 		HashMap<String, String> queryStringParams = new HashMap<>(1);
 		queryStringParams.put("cookieId", cookieId);
-		sendRequest("optOut", queryStringParams, null, false, null);
+		try {
+			sendRequest("optOut", queryStringParams, null, false, null);
+		} finally {
+			// the events of the cookie may be cached by the userId as well
+			clearLookupCache();
+		}
 	}
 
 	/**
@@ -386,15 +750,106 @@ public final class GravityClient {
 	 *              a synchronous call returns only after the data is saved to
 	 * @throws IOException if cannot connect
 	 * @throws GravityRecEngException if cannot process the answer filesdatabase.
+	 * @throws GravityBulkException if some of the items were rejected and {@link #setBisectRejectedBatches} is enabled
 	 */
 	public void addItems(GravityItem[] items, boolean async) throws GravityRecEngException, IOException {
 		HashMap<String, String> queryStringParams = new HashMap<>();
 		queryStringParams.put("async", Boolean.toString(async));
-		sendRequest("addItems", queryStringParams, items, false, null);
+		sendBulkRequest("addItems", queryStringParams, items);
+	}
+
+	/**
+	 * Adds the items of a JSON file to the recommendation engine, without deserializing them.
+	 * The file contains {@link GravityItem} objects either in a JSON array or as JSON lines (one object per line),
+	 * in UTF-8 encoding. The records are sent in chunks, the byte ranges of the records are copied from the file as is.
+	 * Unlike {@link #addItems}, which escapes the non-ASCII characters, the chunks may contain multi-byte UTF-8
+	 * characters, sent with the same charset=utf-8 content type. If a chunk is rejected, the previous chunks remain
+	 * saved, and the failure tells the number of records saved.
+	 *
+	 * @param file      the JSON file
+	 * @param chunkSize the number of records sent in one request
+	 * @param async     see {@link #addItems}
+	 * @return the number of records sent
+	 * @throws IOException if cannot connect, or the file cannot be read or is not a JSON array or JSON lines of objects
+	 * @throws GravityFileImportException if a chunk failed or the file is malformed after some of the records were sent
+	 * @throws GravityRecEngException if cannot process the answer files
+	 */
+	public long addItemsFromFile(Path file, int chunkSize, boolean async) throws GravityRecEngException, IOException {
+		return sendFile("addItems", file, chunkSize, async);
+	}
+
+	/**
+	 * Adds the users of a JSON file to the recommendation engine, without deserializing them.
+	 * See {@link #addItemsFromFile} for the file format. As the users are not read, the whole lookup cache is cleared.
+	 *
+	 * @param file      the JSON file of {@link GravityUser} objects
+	 * @param chunkSize the number of records sent in one request
+	 * @param async     see {@link #addUsers}
+	 * @return the number of records sent
+	 * @throws IOException if cannot connect, or the file cannot be read or is not a JSON array or JSON lines of objects
+	 * @throws GravityFileImportException if a chunk failed or the file is malformed after some of the records were sent
+	 * @throws GravityRecEngException if cannot process the answer files
+	 */
+	public long addUsersFromFile(Path file, int chunkSize, boolean async) throws GravityRecEngException, IOException {
+		try {
+			return sendFile("addUsers", file, chunkSize, async);
+		} finally {
+			clearLookupCache();
+		}
+	}
+
+	/**
+	 * Adds the events of a JSON file to the recommendation engine, without deserializing them.
+	 * See {@link #addItemsFromFile} for the file format. As the events are not read, the whole lookup cache is cleared.
+	 *
+	 * @param file      the JSON file of {@link GravityEvent} objects
+	 * @param chunkSize the number of records sent in one request
+	 * @param async     see {@link #addEvents}
+	 * @return the number of records sent
+	 * @throws IOException if cannot connect, or the file cannot be read or is not a JSON array or JSON lines of objects
+	 * @throws GravityFileImportException if a chunk failed or the file is malformed after some of the records were sent
+	 * @throws GravityRecEngException if cannot process the answer files
+	 */
+	public long addEventsFromFile(Path file, int chunkSize, boolean async) throws GravityRecEngException, IOException {
+		try {
+			return sendFile("addEvents", file, chunkSize, async);
+		} finally {
+			clearLookupCache();
+		}
+	}
+
+	private long sendFile(String methodName, Path file, int chunkSize, boolean async) throws GravityRecEngException, IOException {
+		if (chunkSize <= 0) throw new IllegalArgumentException("chunkSize must be positive");
+		HashMap<String, String> queryStringParams = new HashMap<>();
+		queryStringParams.put("async", Boolean.toString(async));
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			final GravityJsonRecordScanner scanner = new GravityJsonRecordScanner(channel);
+			final GravityJsonFileChunk chunk = new GravityJsonFileChunk(file, channel, chunkSize);
+			long recordCount = 0;
+			try {
+				while (scanner.nextRecord()) {
+					chunk.add(scanner.getRecordStart(), scanner.getRecordEnd(), scanner.isArray());
+					if (chunk.size() == chunkSize) {
+						sendRequest(methodName, queryStringParams, chunk, false, null);
+						recordCount += chunk.size();
+						chunk.clear(recordCount);
+					}
+				}
+				if (chunk.size() > 0) {
+					sendRequest(methodName, queryStringParams, chunk, false, null);
+					recordCount += chunk.size();
+				}
+			} catch (GravityRecEngException | IOException e) {
+				if (recordCount == 0) throw e;
+				throw new GravityFileImportException(methodName, file.toString(), recordCount, e);
+			}
+			return recordCount;
+		}
 	}
 
 	/**
 	 * Returns a list of recommended items, based on the given context parameters.
+	 * The items marked unavailable in the {@link #getAvailabilityIndex() availability index} are left out.
 	 *
 	 * @param userId   The identifier of the logged in user. If no user is logged in, null should be specified.
 	 * @param cookieId It should be a permanent identifier for the end users computer, preserving its value across browser sessions.
@@ -412,8 +867,152 @@ public final class GravityClient {
 		if (cookieId != null) {
 			queryStringParams.put("cookieId", cookieId);
 		}
-		return (GravityItemRecommendation) sendRequest("getItemRecommendation",
-				queryStringParams, context, true, GravityItemRecommendation.class);
+		if (!isAvailabilityFiltered(context)) {
+			return (GravityItemRecommendation) sendRequest("getItemRecommendation",
+					queryStringParams, context, true, GravityItemRecommendation.class);
+		}
+		final GravityItemRecommendation recommendation = (GravityItemRecommendation) sendRequest("getItemRecommendation",
+				queryStringParams, withAvailabilityMargin(context), true, GravityItemRecommendation.class);
+		return filterUnavailable(recommendation, context.numberLimit);
+	}
+
+	boolean isAvailabilityFiltered(GravityRecommendationContext context) {
+		return context != null && context.numberLimit > 0 && availabilityMargin > 0 && !availabilityIndex.isEmpty();
+	}
+
+	/**
+	 * The context of the caller is not modified, its JSON tree is sent with the raised numberLimit instead.
+	 */
+	ObjectNode withAvailabilityMargin(GravityRecommendationContext context) {
+		final ObjectNode request = mapper.valueToTree(context);
+		final int margin = Math.max(1, (int) ((long) context.numberLimit * availabilityMargin / 100));
+		request.put("numberLimit", (int) Math.min(Integer.MAX_VALUE, (long) context.numberLimit + margin));
+		return request;
+	}
+
+	/**
+	 * Drops the unavailable items and the null ids, as {@link #readItemIds} does, and trims the result to the numberLimit.
+	 * The items are filtered by their own itemId, as they are not necessarily aligned with the itemIds, while the
+	 * predictionValues follow the itemIds. The predictionValues are dropped if they are not aligned with the itemIds
+	 * and some of the itemIds were removed, as the remaining values could not be matched to the items.
+	 */
+	GravityItemRecommendation filterUnavailable(GravityItemRecommendation recommendation, int numberLimit) {
+		if (recommendation == null) return null;
+		final String[] itemIds = recommendation.itemIds;
+		if (itemIds != null) {
+			final int[] kept = new int[Math.min(itemIds.length, numberLimit)];
+			int keptCount = 0;
+			for (int i = 0; i < itemIds.length && keptCount < kept.length; i++) {
+				if (itemIds[i] != null && availabilityIndex.isAvailable(itemIds[i])) kept[keptCount++] = i;
+			}
+			if (keptCount < itemIds.length) {
+				recommendation.itemIds = select(itemIds, kept, keptCount);
+				if (recommendation.predictionValues != null && recommendation.predictionValues.length == itemIds.length) {
+					final double[] predictionValues = new double[keptCount];
+					for (int i = 0; i < keptCount; i++) predictionValues[i] = recommendation.predictionValues[kept[i]];
+					recommendation.predictionValues = predictionValues;
+				} else {
+					recommendation.predictionValues = null;
+				}
+			}
+		}
+		final GravityItem[] items = recommendation.items;
+		if (items != null) {
+			final int[] kept = new int[Math.min(items.length, numberLimit)];
+			int keptCount = 0;
+			for (int i = 0; i < items.length && keptCount < kept.length; i++) {
+				if (items[i] != null && items[i].itemId != null && availabilityIndex.isAvailable(items[i].itemId)) kept[keptCount++] = i;
+			}
+			if (keptCount < items.length) recommendation.items = select(items, kept, keptCount);
+		}
+		return recommendation;
+	}
+
+	/**
+	 * Returns the ids of the recommended items, based on the given context parameters. Only the recommendationId and
+	 * the itemIds are read from the answer, the rest of it (e.g. the name values of the items and the facets) is
+	 * skipped without creating objects, so it is cheaper than {@link #getItemRecommendation} for large numberLimit values.
+	 * The items marked unavailable in the {@link #getAvailabilityIndex() availability index} are left out.
+	 *
+	 * @param userId   The identifier of the logged in user. If no user is logged in, null should be specified.
+	 * @param cookieId It should be a permanent identifier for the end users computer, preserving its value across browser sessions.
+	 *                 It should be always specified.
+	 * @param context  Additional information which describes the actual scenario.
+	 * @return The recommendationId and the ids of the recommended items.
+	 * @throws IOException if cannot connect
+	 * @throws GravityRecEngException if cannot process the answer files
+	 */
+	public GravityRecommendedItemIds getItemRecommendationIds(String userId, String cookieId, GravityRecommendationContext context) throws GravityRecEngException, IOException {
+		return getItemRecommendationIds(userId, cookieId, context, new GravityRecommendedItemIds());
+	}
+
+	/**
+	 * Same as {@link #getItemRecommendationIds(String, String, GravityRecommendationContext)}, but the answer is read
+	 * into the given result, so that a thread can reuse its arrays for the subsequent calls.
+	 *
+	 * @param userId   The identifier of the logged in user. If no user is logged in, null should be specified.
+	 * @param cookieId It should be a permanent identifier for the end users computer, preserving its value across browser sessions.
+	 *                 It should be always specified.
+	 * @param context  Additional information which describes the actual scenario.
+	 * @param result   Its previous content is overwritten.
+	 * @return The given result.
+	 * @throws IOException if cannot connect
+	 * @throws GravityRecEngException if cannot process the answer files
+	 */
+	public GravityRecommendedItemIds getItemRecommendationIds(String userId, String cookieId, GravityRecommendationContext context, final GravityRecommendedItemIds result) throws GravityRecEngException, IOException {
+		HashMap<String, String> queryStringParams = new HashMap<>();
+		if (userId != null) {
+			queryStringParams.put("userId", userId);
+		}
+		if (cookieId != null) {
+			queryStringParams.put("cookieId", cookieId);
+		}
+		final boolean filtered = isAvailabilityFiltered(context);
+		final GravityItemAvailabilityIndex filter = filtered ? availabilityIndex : null;
+		final int numberLimit = filtered ? context.numberLimit : Integer.MAX_VALUE;
+		result.clear();
+		sendRequest("getItemRecommendation", queryStringParams, filtered ? withAvailabilityMargin(context) : context, new AnswerReader() {
+			@Override
+			public Object read(InputStream input) throws GravityRecEngException, IOException {
+				try {
+					readItemIds(input, result, filter, numberLimit);
+				} catch (JsonProcessingException e) {
+					throw new GravityRecEngException(e.getMessage(), "");
+				}
+				return result;
+			}
+		});
+		return result;
+	}
+
+	static void readItemIds(InputStream input, GravityRecommendedItemIds result, GravityItemAvailabilityIndex filter, int numberLimit) throws IOException {
+		try (JsonParser parser = mapper.getFactory().createParser(input)) {
+			parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+			if (parser.nextToken() != JsonToken.START_OBJECT) throw new JsonParseException(parser, "recommendation object expected");
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				final String field = parser.getCurrentName();
+				final JsonToken value = parser.nextToken();
+				if ("recommendationId".equals(field)) {
+					result.setRecommendationId(value == JsonToken.VALUE_NULL ? null : parser.getText());
+				} else if ("itemIds".equals(field) && value == JsonToken.START_ARRAY) {
+					JsonToken token;
+					while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+						if (token == JsonToken.VALUE_NULL) continue;
+						if (token != JsonToken.VALUE_STRING && !token.isNumeric()) throw new JsonParseException(parser, "item id expected");
+						final String itemId = parser.getText();
+						if (result.size() < numberLimit && (filter == null || filter.isAvailable(itemId))) result.add(itemId);
+					}
+				} else {
+					parser.skipChildren();
+				}
+			}
+		}
+	}
+
+	private static <T> T[] select(T[] values, int[] indexes, int count) {
+		final T[] selected = Arrays.copyOf(values, count);
+		for (int i = 0; i < count; i++) selected[i] = values[indexes[i]];
+		return selected;
 	}
 
 	/**
@@ -0,0 +1,226 @@
+package com.gravityrd.recengclient.webshop;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Creates the {@link GravityClient} of each webshop (tenant) served by one application. The factory and the settings
+ * of its clients are immutable and thread-safe. The clients share the JSON mapper, the metrics and the keep-alive
+ * connections of the JVM, each tenant has its own availability index, lookup cache and request slots, and none of
+ * the clients starts threads of its own.
+ * <p>
+ * Example usage:
+ * </p>
+ * <pre>
+ * 		GravityClientFactory factory = GravityClientFactory.builder()
+ * 				.readTimeout(1000)
+ * 				.maxConcurrentRequestsPerTenant(8)
+ * 				.build();
+ * 		GravityClient client = factory.getClient(remoteUrl, "sampleUser", "samplePasswd");
+ * </pre>
+ */
+public final class GravityClientFactory {
+
+	private final int readTimeout;
+	private final int maxConcurrentRequestsPerTenant;
+	private final boolean bisectRejectedBatches;
+	private final int availabilityMargin;
+	private final int lookupCacheSize;
+	private final int lookupCacheTtl;
+	private final GravityClientMetrics metrics = new GravityClientMetrics();
+	private final ConcurrentMap<String, Tenant> tenants = new ConcurrentHashMap<>();
+
+	private GravityClientFactory(Builder builder) {
+		this.readTimeout = builder.readTimeout;
+		this.maxConcurrentRequestsPerTenant = builder.maxConcurrentRequestsPerTenant;
+		this.bisectRejectedBatches = builder.bisectRejectedBatches;
+		this.availabilityMargin = builder.availabilityMargin;
+		this.lookupCacheSize = builder.lookupCacheSize;
+		this.lookupCacheTtl = builder.lookupCacheTtl;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Returns the client of a tenant, the same instance is returned for the same remoteUrl and userName as long as the
+	 * password is the same. If the password changed, the client is replaced, the new client shares the availability
+	 * index, the lookup cache and the request slots of the tenant with the old one. The settings of the returned client
+	 * cannot be changed.
+	 *
+	 * @param remoteUrl the server url provided by Gravity integration team
+	 * @param userName  user authentication name provided by Gravity
+	 * @param password  user authentication password provided by Gravity
+	 * @return the client of the tenant
+	 */
+	public GravityClient getClient(String remoteUrl, String userName, String password) {
+		if (remoteUrl == null) throw new IllegalArgumentException("remoteUrl must be specified");
+		if (userName == null) throw new IllegalArgumentException("userName must be specified");
+		if (password == null) throw new IllegalArgumentException("password must be specified");
+		final String key = getKey(remoteUrl, userName);
+		Tenant tenant = tenants.get(key);
+		if (tenant == null) {
+			final Tenant created = new Tenant(this);
+			tenant = tenants.putIfAbsent(key, created);
+			if (tenant == null) tenant = created;
+		}
+		while (true) {
+			final GravityClient client = tenant.client.get();
+			if (client != null && password.equals(client.getPassword())) return client;
+			final GravityClient created = new GravityClient(remoteUrl, userName, password, this, tenant);
+			if (tenant.client.compareAndSet(client, created)) return created;
+		}
+	}
+
+	/**
+	 * Forgets the client and the state of a tenant, e.g. when the webshop is removed. The client remains usable by its
+	 * current holders, the next {@link #getClient} of the tenant starts with an empty availability index and cache.
+	 *
+	 * @param remoteUrl the server url of the tenant
+	 * @param userName  user authentication name of the tenant
+	 * @return true if the factory had a client for the tenant
+	 */
+	public boolean removeClient(String remoteUrl, String userName) {
+		return tenants.remove(getKey(remoteUrl, userName)) != null;
+	}
+
+	private static String getKey(String remoteUrl, String userName) {
+		return remoteUrl + '\u0000' + userName;
+	}
+
+	/**
+	 * @return the request counters of all tenants
+	 */
+	public GravityClientMetrics getMetrics() {
+		return metrics;
+	}
+
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	public int getMaxConcurrentRequestsPerTenant() {
+		return maxConcurrentRequestsPerTenant;
+	}
+
+	public boolean isBisectRejectedBatches() {
+		return bisectRejectedBatches;
+	}
+
+	public int getAvailabilityMargin() {
+		return availabilityMargin;
+	}
+
+	public int getLookupCacheSize() {
+		return lookupCacheSize;
+	}
+
+	public int getLookupCacheTtl() {
+		return lookupCacheTtl;
+	}
+
+	/**
+	 * The state of a tenant shared by its successive clients.
+	 */
+	static final class Tenant {
+		final GravityItemAvailabilityIndex availabilityIndex = new GravityItemAvailabilityIndex();
+		/**
+		 * Null if caching is disabled.
+		 */
+		final GravityLookupCache lookupCache;
+		/**
+		 * Null if the concurrent requests are unlimited.
+		 */
+		final Semaphore quota;
+		/**
+		 * The client with the current password.
+		 */
+		final AtomicReference<GravityClient> client = new AtomicReference<>();
+
+		private Tenant(GravityClientFactory factory) {
+			this.lookupCache = factory.lookupCacheSize > 0 ? new GravityLookupCache(factory.lookupCacheSize, factory.lookupCacheTtl) : null;
+			this.quota = factory.maxConcurrentRequestsPerTenant > 0 ? new Semaphore(factory.maxConcurrentRequestsPerTenant) : null;
+		}
+	}
+
+	public static final class Builder {
+		private int readTimeout = 3000;
+		private int maxConcurrentRequestsPerTenant;
+		private boolean bisectRejectedBatches;
+		private int availabilityMargin = 20;
+		private int lookupCacheSize;
+		private int lookupCacheTtl = 60000;
+
+		private Builder() {
+		}
+
+		/**
+		 * Set the timeout for the operations in millisecs, 0 means no timeout. The default value is 3000 millisecs.
+		 * @param readTimeout wait up to this millisecond for the request answers and the request slots of the tenant
+		 * @return this builder
+		 */
+		public Builder readTimeout(int readTimeout) {
+			if (readTimeout < 0) throw new IllegalArgumentException("readTimeout cannot be negative");
+			this.readTimeout = readTimeout;
+			return this;
+		}
+
+		/**
+		 * Set the maximum number of concurrent requests of a tenant, further requests wait up to the read timeout for a
+		 * free slot, or without limit if the read timeout is 0. The default value is 0, meaning unlimited.
+		 * @param maxConcurrentRequestsPerTenant the maximum number of concurrent requests of a tenant
+		 * @return this builder
+		 */
+		public Builder maxConcurrentRequestsPerTenant(int maxConcurrentRequestsPerTenant) {
+			if (maxConcurrentRequestsPerTenant < 0) throw new IllegalArgumentException("maxConcurrentRequestsPerTenant cannot be negative");
+			this.maxConcurrentRequestsPerTenant = maxConcurrentRequestsPerTenant;
+			return this;
+		}
+
+		/**
+		 * @param bisectRejectedBatches see {@link GravityClient#setBisectRejectedBatches}
+		 * @return this builder
+		 */
+		public Builder bisectRejectedBatches(boolean bisectRejectedBatches) {
+			this.bisectRejectedBatches = bisectRejectedBatches;
+			return this;
+		}
+
+		/**
+		 * @param availabilityMargin see {@link GravityClient#setAvailabilityMargin}
+		 * @return this builder
+		 */
+		public Builder availabilityMargin(int availabilityMargin) {
+			if (availabilityMargin < 0) throw new IllegalArgumentException("availabilityMargin cannot be negative");
+			this.availabilityMargin = availabilityMargin;
+			return this;
+		}
+
+		/**
+		 * @param lookupCacheSize see {@link GravityClient#setLookupCacheSize}, the limit applies to each tenant
+		 * @return this builder
+		 */
+		public Builder lookupCacheSize(int lookupCacheSize) {
+			if (lookupCacheSize < 0) throw new IllegalArgumentException("lookupCacheSize cannot be negative");
+			this.lookupCacheSize = lookupCacheSize;
+			return this;
+		}
+
+		/**
+		 * @param lookupCacheTtl see {@link GravityClient#setLookupCacheTtl}
+		 * @return this builder
+		 */
+		public Builder lookupCacheTtl(int lookupCacheTtl) {
+			if (lookupCacheTtl <= 0) throw new IllegalArgumentException("lookupCacheTtl must be positive");
+			this.lookupCacheTtl = lookupCacheTtl;
+			return this;
+		}
+
+		public GravityClientFactory build() {
+			return new GravityClientFactory(this);
+		}
+	}
+}
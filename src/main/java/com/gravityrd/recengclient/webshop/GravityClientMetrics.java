@@ -0,0 +1,79 @@
+package com.gravityrd.recengclient.webshop;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request counters of the clients created by a {@link GravityClientFactory}, aggregated per server side method.
+ * The counters are updated without locking, so it is safe to read them while requests are in progress.
+ */
+public final class GravityClientMetrics {
+
+	private final ConcurrentMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+
+	GravityClientMetrics() {
+	}
+
+	void record(String methodName, long elapsedNanos, boolean success) {
+		MethodMetrics methodMetrics = methods.get(methodName);
+		if (methodMetrics == null) {
+			final MethodMetrics created = new MethodMetrics();
+			methodMetrics = methods.putIfAbsent(methodName, created);
+			if (methodMetrics == null) methodMetrics = created;
+		}
+		methodMetrics.requests.incrementAndGet();
+		if (!success) methodMetrics.failures.incrementAndGet();
+		methodMetrics.elapsedNanos.addAndGet(elapsedNanos);
+	}
+
+	/**
+	 * @param methodName the server side method, e.g. addItems
+	 * @return the counters of the method, null if it was not called yet
+	 */
+	public MethodMetrics getMethodMetrics(String methodName) {
+		return methods.get(methodName);
+	}
+
+	/**
+	 * @return the counters of the methods called so far, sorted by method name
+	 */
+	public Map<String, MethodMetrics> getMethodMetrics() {
+		return Collections.unmodifiableMap(new TreeMap<>(methods));
+	}
+
+	public static final class MethodMetrics {
+		private final AtomicLong requests = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+		private final AtomicLong elapsedNanos = new AtomicLong();
+
+		/**
+		 * @return the number of requests sent, including the failed ones
+		 */
+		public long getRequests() {
+			return requests.get();
+		}
+
+		/**
+		 * @return the number of requests that threw an exception, including the ones that found no free request slot
+		 */
+		public long getFailures() {
+			return failures.get();
+		}
+
+		/**
+		 * @return the total time spent in the requests in nanosecs, including waiting for the tenant quota
+		 */
+		public long getElapsedNanos() {
+			return elapsedNanos.get();
+		}
+
+		@Override
+		public String toString() {
+			return "requests=" + getRequests() + ", failures=" + getFailures() + ", elapsedNanos=" + getElapsedNanos();
+		}
+	}
+}
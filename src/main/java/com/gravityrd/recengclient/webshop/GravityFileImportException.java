@@ -0,0 +1,51 @@
+package com.gravityrd.recengclient.webshop;
+
+import com.gravityrd.receng.web.webshop.jsondto.GravityRecEngException;
+
+/**
+ * Thrown by the file imports of {@link GravityClient} (e.g. {@link GravityClient#addItemsFromFile}) when a chunk failed
+ * or the file turned out to be malformed after some of the chunks were already sent. The first
+ * {@link #getProcessedCount()} records of the file were saved by the recommendation engine, the records from it on
+ * were not.
+ */
+public class GravityFileImportException extends GravityRecEngException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String methodName;
+	private final String file;
+	private final long processedCount;
+
+	/**
+	 * @param processedCount the number of records sent before the failure
+	 * @param cause          the failure that stopped the import
+	 */
+	public GravityFileImportException(String methodName, String file, long processedCount, Throwable cause) {
+		super(String.format("%s stopped after %d records of %s: %s", methodName, processedCount, file, cause), "");
+		this.methodName = methodName;
+		this.file = file;
+		this.processedCount = processedCount;
+		initCause(cause);
+	}
+
+	/**
+	 * @return the name of the bulk call, e.g. addItems
+	 */
+	public String getMethodName() {
+		return methodName;
+	}
+
+	/**
+	 * @return the path of the imported file
+	 */
+	public String getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the number of records at the beginning of the file that were saved
+	 */
+	public long getProcessedCount() {
+		return processedCount;
+	}
+}
@@ -0,0 +1,71 @@
+package com.gravityrd.recengclient.webshop;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Local index of the items that became unavailable (e.g. went out of stock) since the last catalog sync, used by
+ * {@link GravityClient#getItemRecommendation} to filter the recommended items without querying the webshop database.
+ * <p>
+ * Only the unavailable items are stored, every other item is considered available, so the index stays small and
+ * is empty right after a catalog sync. It is safe to update while recommendations are requested.
+ * </p>
+ */
+public final class GravityItemAvailabilityIndex {
+
+	private final Set<String> unavailableItemIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	GravityItemAvailabilityIndex() {
+	}
+
+	/**
+	 * @param itemId {@link com.gravityrd.receng.web.webshop.jsondto.GravityItem#itemId}
+	 * @param available false if the item should not be recommended
+	 */
+	public void update(String itemId, boolean available) {
+		if (itemId == null) throw new IllegalArgumentException("itemId must be specified");
+		if (available) {
+			unavailableItemIds.remove(itemId);
+		} else {
+			unavailableItemIds.add(itemId);
+		}
+	}
+
+	/**
+	 * @param availability availability by item id, see {@link #update(String, boolean)}
+	 */
+	public void update(Map<String, Boolean> availability) {
+		for (Entry<String, Boolean> entry : availability.entrySet()) {
+			update(entry.getKey(), entry.getValue());
+		}
+	}
+
+	/**
+	 * @param itemId the id of the item, null is considered available
+	 * @return false if the item was marked unavailable
+	 */
+	public boolean isAvailable(String itemId) {
+		return itemId == null || !unavailableItemIds.contains(itemId);
+	}
+
+	/**
+	 * @return the number of unavailable items
+	 */
+	public int size() {
+		return unavailableItemIds.size();
+	}
+
+	public boolean isEmpty() {
+		return unavailableItemIds.isEmpty();
+	}
+
+	/**
+	 * Marks every item available, call it after the items are synchronized with {@link GravityClient#addItems}.
+	 */
+	public void clear() {
+		unavailableItemIds.clear();
+	}
+}
@@ -0,0 +1,96 @@
+package com.gravityrd.recengclient.webshop;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+
+/**
+ * Consecutive records of a JSON file found by a {@link GravityJsonRecordScanner}, sent as a JSON array by copying their
+ * bytes from the file. The length is known in advance, so the request can be streamed with a fixed length.
+ */
+final class GravityJsonFileChunk {
+
+	private final Path file;
+	private final FileChannel channel;
+	private final long[] starts;
+	private final long[] ends;
+	private int size;
+	private long firstRecordIndex;
+	/**
+	 * True if the records are in a JSON array, so the range from the first to the last one can be sent at once.
+	 */
+	private boolean contiguous;
+
+	GravityJsonFileChunk(Path file, FileChannel channel, int chunkSize) {
+		this.file = file;
+		this.channel = channel;
+		this.starts = new long[chunkSize];
+		this.ends = new long[chunkSize];
+	}
+
+	/**
+	 * @param start      the file offset of the first byte of the record
+	 * @param end        the file offset after the last byte of the record
+	 * @param contiguous true if the bytes between the records are valid separators, see {@link GravityJsonRecordScanner#isArray()}
+	 */
+	void add(long start, long end, boolean contiguous) {
+		starts[size] = start;
+		ends[size] = end;
+		size++;
+		this.contiguous = contiguous;
+	}
+
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @param firstRecordIndex the index of the next record in the file, used in the error messages
+	 */
+	void clear(long firstRecordIndex) {
+		this.size = 0;
+		this.firstRecordIndex = firstRecordIndex;
+	}
+
+	/**
+	 * @return the number of bytes written by {@link #writeTo}
+	 */
+	long getLength() {
+		// the brackets, and the commas between the records unless the separators of the file are copied
+		if (contiguous) return ends[size - 1] - starts[0] + 2;
+		long length = size + 1;
+		for (int i = 0; i < size; i++) length += ends[i] - starts[i];
+		return length;
+	}
+
+	void writeTo(OutputStream output) throws IOException {
+		final WritableByteChannel target = Channels.newChannel(output);
+		output.write('[');
+		if (contiguous) {
+			transfer(starts[0], ends[size - 1], target);
+		} else {
+			for (int i = 0; i < size; i++) {
+				if (i > 0) output.write(',');
+				transfer(starts[i], ends[i], target);
+			}
+		}
+		output.write(']');
+	}
+
+	private void transfer(long start, long end, WritableByteChannel target) throws IOException {
+		for (long position = start; position < end; ) {
+			final long transferred = channel.transferTo(position, end - position, target);
+			if (transferred <= 0) throw new EOFException(file + " was truncated while sending it");
+			position += transferred;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("records %d-%d of %s", firstRecordIndex, firstRecordIndex + size - 1, file);
+	}
+}
@@ -0,0 +1,154 @@
+package com.gravityrd.recengclient.webshop;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Finds the byte ranges of the records of a JSON file without parsing them, the file is either a JSON array of objects
+ * or JSON lines (one object per line). Only the nesting of brackets outside of strings is tracked, which is safe on
+ * UTF-8 input as the bytes of multi-byte characters never match the ASCII structural characters.
+ */
+final class GravityJsonRecordScanner {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	/**
+	 * The file offset of the first byte in the buffer.
+	 */
+	private long bufferOffset;
+	private int index;
+	private int limit;
+
+	private boolean started;
+	private boolean array;
+	private boolean finished;
+	private long recordStart;
+	private long recordEnd;
+
+	GravityJsonRecordScanner(FileChannel channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * Moves to the next record of the file.
+	 * @return false if there are no more records
+	 * @throws IOException if the file cannot be read or it is not a JSON array or JSON lines of objects
+	 */
+	boolean nextRecord() throws IOException {
+		if (finished) return false;
+		int c = skipWhitespace();
+		if (!started) {
+			started = true;
+			if (c == 0xEF) {
+				if (read() != 0xBB || read() != 0xBF) throw unexpected(c, offset() - 3);
+				c = skipWhitespace();
+			}
+			if (c == '[') {
+				array = true;
+				c = skipWhitespace();
+				if (c == ']') return finish();
+			}
+		} else if (array) {
+			if (c == ']') return finish();
+			if (c != ',') throw unexpected(c, offset() - 1);
+			c = skipWhitespace();
+		}
+		if (c == -1) {
+			if (array) throw new EOFException("unterminated JSON array");
+			return finish();
+		}
+		if (c != '{') throw unexpected(c, offset() - 1);
+		recordStart = offset() - 1;
+		skipObject();
+		recordEnd = offset();
+		return true;
+	}
+
+	/**
+	 * @return true if the file is a JSON array, so the bytes between its records are valid separators
+	 */
+	boolean isArray() {
+		return array;
+	}
+
+	/**
+	 * @return the file offset of the first byte of the current record
+	 */
+	long getRecordStart() {
+		return recordStart;
+	}
+
+	/**
+	 * @return the file offset after the last byte of the current record
+	 */
+	long getRecordEnd() {
+		return recordEnd;
+	}
+
+	private boolean finish() {
+		finished = true;
+		return false;
+	}
+
+	private void skipObject() throws IOException {
+		int depth = 1;
+		boolean inString = false;
+		while (depth > 0) {
+			int c = read();
+			if (c == -1) throw new EOFException("unterminated record starting at offset " + recordStart);
+			if (inString) {
+				if (c == '\\') {
+					if (read() == -1) throw new EOFException("unterminated record starting at offset " + recordStart);
+				} else if (c == '"') {
+					inString = false;
+				}
+			} else if (c == '"') {
+				inString = true;
+			} else if (c == '{' || c == '[') {
+				depth++;
+			} else if (c == '}' || c == ']') {
+				depth--;
+			}
+		}
+	}
+
+	private int skipWhitespace() throws IOException {
+		int c;
+		do {
+			c = read();
+		} while (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+		return c;
+	}
+
+	private int read() throws IOException {
+		if (index == limit) {
+			bufferOffset += limit;
+			index = 0;
+			limit = 0;
+			buffer.clear();
+			int read;
+			do {
+				read = channel.read(buffer, bufferOffset);
+			} while (read == 0);
+			if (read < 0) return -1;
+			limit = read;
+		}
+		return buffer.array()[index++] & 0xFF;
+	}
+
+	/**
+	 * @return the file offset of the next byte to read
+	 */
+	private long offset() {
+		return bufferOffset + index;
+	}
+
+	private static IOException unexpected(int c, long offset) {
+		if (c == -1) return new EOFException("unexpected end of file at offset " + offset);
+		return new IOException(String.format("unexpected character '%c' at offset %d, a JSON array or JSON lines of objects expected", (char) c, offset));
+	}
+}
@@ -0,0 +1,129 @@
+package com.gravityrd.recengclient.webshop;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded read-through cache of the user and event history lookups of a {@link GravityClient}.
+ * <p>
+ * The answers are grouped by identity (a userId or a cookieId), so that a write concerning the identity invalidates
+ * all of its lookups at once. An identity expires a fixed time after its first cached lookup, and the oldest identities
+ * are evicted once more than the maximum number of identities were cached.
+ * </p>
+ */
+final class GravityLookupCache {
+
+	/**
+	 * The number of invalidation counters, a power of two. The identities sharing a counter drop the answers of each
+	 * other fetched before an invalidation, which is rare enough to keep the counters few and fixed.
+	 */
+	private static final int INVALIDATION_STRIPES = 256;
+
+	private final int maxSize;
+	private final long ttlNanos;
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+	private final Queue<Entry> insertionOrder = new ConcurrentLinkedQueue<>();
+	/**
+	 * The length of insertionOrder, including the entries already invalidated.
+	 */
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicLongArray invalidations = new AtomicLongArray(INVALIDATION_STRIPES);
+
+	GravityLookupCache(int maxSize, long ttlMillis) {
+		if (maxSize <= 0) throw new IllegalArgumentException("maxSize must be positive");
+		this.maxSize = maxSize;
+		this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+	}
+
+	Object get(String identity, String lookup) {
+		final Entry entry = entries.get(identity);
+		if (entry == null) return null;
+		if (entry.isExpired(System.nanoTime())) {
+			entries.remove(identity, entry);
+			return null;
+		}
+		return entry.values.get(lookup);
+	}
+
+	/**
+	 * @return pass it to {@link #put} to drop answers of the identity fetched before an invalidation
+	 */
+	long getInvalidationStamp(String identity) {
+		return invalidations.get(stripe(identity));
+	}
+
+	void put(String identity, String lookup, Object value, long invalidationStamp) {
+		if (value == null) return;
+		final long now = System.nanoTime();
+		final int stripe = stripe(identity);
+		while (invalidations.get(stripe) == invalidationStamp) {
+			final Entry entry = entries.get(identity);
+			if (entry != null && !entry.isExpired(now)) {
+				entry.values.put(lookup, value);
+				// an invalidation may have happened since the check above, it must not be overwritten
+				if (invalidations.get(stripe) != invalidationStamp) entry.values.remove(lookup, value);
+				return;
+			}
+			final Entry created = new Entry(identity, now + ttlNanos);
+			created.values.put(lookup, value);
+			final boolean installed = entry == null ? entries.putIfAbsent(identity, created) == null : entries.replace(identity, entry, created);
+			if (installed) {
+				if (invalidations.get(stripe) != invalidationStamp) {
+					entries.remove(identity, created);
+					return;
+				}
+				insertionOrder.add(created);
+				if (queued.incrementAndGet() > maxSize) evict();
+				return;
+			}
+		}
+	}
+
+	private void evict() {
+		while (queued.get() > maxSize) {
+			final Entry oldest = insertionOrder.poll();
+			if (oldest == null) return;
+			queued.decrementAndGet();
+			entries.remove(oldest.identity, oldest);
+		}
+	}
+
+	void invalidate(String identity) {
+		invalidations.incrementAndGet(stripe(identity));
+		entries.remove(identity);
+	}
+
+	void clear() {
+		for (int i = 0; i < INVALIDATION_STRIPES; i++) invalidations.incrementAndGet(i);
+		entries.clear();
+	}
+
+	private static int stripe(String identity) {
+		final int hash = identity.hashCode();
+		return (hash ^ (hash >>> 16)) & (INVALIDATION_STRIPES - 1);
+	}
+
+	int size() {
+		return entries.size();
+	}
+
+	private static final class Entry {
+		private final String identity;
+		private final long expiresAt;
+		private final ConcurrentMap<String, Object> values = new ConcurrentHashMap<>(4);
+
+		private Entry(String identity, long expiresAt) {
+			this.identity = identity;
+			this.expiresAt = expiresAt;
+		}
+
+		private boolean isExpired(long now) {
+			return now - expiresAt >= 0;
+		}
+	}
+}
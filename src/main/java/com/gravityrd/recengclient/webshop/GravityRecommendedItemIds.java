@@ -0,0 +1,66 @@
+package com.gravityrd.recengclient.webshop;
+
+import java.util.Arrays;
+
+/**
+ * The recommendationId and the recommended itemIds of a recommendation, returned by
+ * {@link GravityClient#getItemRecommendationIds}. The ids are kept in a growing array, so an instance reused by a
+ * thread does not allocate once it held the largest result. It is not thread-safe.
+ */
+public final class GravityRecommendedItemIds {
+
+	private String recommendationId;
+	private String[] itemIds = new String[16];
+	private int size;
+
+	public String getRecommendationId() {
+		return recommendationId;
+	}
+
+	void setRecommendationId(String recommendationId) {
+		this.recommendationId = recommendationId;
+	}
+
+	/**
+	 * @return the number of recommended items
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @param index position of the item in the recommendation, 0 is the first
+	 * @return the itemId at the given position
+	 */
+	public String getItemId(int index) {
+		if (index < 0 || index >= size) throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+		return itemIds[index];
+	}
+
+	/**
+	 * @return a copy of the recommended itemIds
+	 */
+	public String[] toArray() {
+		return Arrays.copyOf(itemIds, size);
+	}
+
+	void add(String itemId) {
+		if (size == itemIds.length) itemIds = Arrays.copyOf(itemIds, size * 2);
+		itemIds[size++] = itemId;
+	}
+
+	void clear() {
+		Arrays.fill(itemIds, 0, size, null);
+		size = 0;
+		recommendationId = null;
+	}
+
+	@Override
+	public String toString() {
+		return "recommendationId=" + recommendationId + ", itemIds=" + Arrays.toString(toArray());
+	}
+}
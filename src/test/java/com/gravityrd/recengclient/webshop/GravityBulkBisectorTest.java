@@ -0,0 +1,126 @@
+package com.gravityrd.recengclient.webshop;
+
+import com.gravityrd.receng.web.webshop.jsondto.GravityRecEngException;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GravityBulkBisectorTest {
+
+	private static final Object[] RECORDS = { "r0", "r1", "BAD2", "r3", "r4", "BAD5", "r6", "r7" };
+
+	/**
+	 * Rejects the content of the batches containing a bad record, optionally fails with an exception after a number of requests.
+	 */
+	private static final class StubSender implements GravityBulkBisector.BatchSender {
+		private final List<String> accepted = new ArrayList<>();
+		private final Exception failure;
+		private final int failAt;
+		private int requests;
+
+		private StubSender(Exception failure, int failAt) {
+			this.failure = failure;
+			this.failAt = failAt;
+		}
+
+		@Override
+		public GravityRecEngException send(Object[] batch) throws GravityRecEngException, IOException {
+			if (requests++ == failAt) {
+				if (failure instanceof IOException) throw (IOException) failure;
+				throw (GravityRecEngException) failure;
+			}
+			for (Object record : batch) {
+				if (record.toString().startsWith("BAD")) return new GravityRecEngException("invalid " + record, "");
+			}
+			for (Object record : batch) accepted.add(record.toString());
+			return null;
+		}
+	}
+
+	@Test
+	public void testIsolatesRejectedRecords() throws IOException, GravityRecEngException {
+		final StubSender sender = new StubSender(null, -1);
+		try {
+			GravityBulkBisector.send("addItems", RECORDS, sender);
+			fail("rejected records expected");
+		} catch (GravityBulkException e) {
+			assertEquals(2, e.getRejectedRecords().size());
+			assertEquals(2, e.getRejectedRecords().get(0).getIndex());
+			assertEquals("BAD2", e.getRejectedRecords().get(0).getRecord());
+			assertEquals("invalid BAD2", e.getRejectedRecords().get(0).getCause().getMessage());
+			assertEquals(5, e.getRejectedRecords().get(1).getIndex());
+			assertEquals("BAD5", e.getRejectedRecords().get(1).getRecord());
+			assertEquals(RECORDS.length, e.getProcessedCount());
+			assertEquals(RECORDS.length, e.getRecordCount());
+		}
+		assertEquals(Arrays.asList("r0", "r1", "r3", "r4", "r6", "r7"), sender.accepted);
+		// 8 -> 4+4 -> 2+2+2+2 -> 1+1 of the two rejected pairs
+		assertEquals(11, sender.requests);
+	}
+
+	@Test
+	public void testAcceptedBatchIsSentOnce() throws IOException, GravityRecEngException {
+		final StubSender sender = new StubSender(null, -1);
+		GravityBulkBisector.send("addItems", new Object[] { "r0", "r1", "r2" }, sender);
+		assertEquals(1, sender.requests);
+	}
+
+	@Test
+	public void testFirstFailureIsThrownUnchanged() throws IOException {
+		final GravityRecEngException unauthorized = new GravityRecEngException("unauthorized", "");
+		try {
+			GravityBulkBisector.send("addItems", RECORDS, new StubSender(unauthorized, 0));
+			fail("failure expected");
+		} catch (GravityRecEngException e) {
+			assertSame(unauthorized, e);
+		}
+	}
+
+	@Test
+	public void testFailureDuringBisectionKeepsProgress() throws GravityRecEngException {
+		final IOException failure = new IOException("connection reset");
+		// requests: [0,8) rejected, [0,4) rejected, [0,2) accepted, [2,4) rejected, [2,3) rejected, [3,4) fails
+		final StubSender sender = new StubSender(failure, 5);
+		try {
+			GravityBulkBisector.send("addItems", RECORDS, sender);
+			fail("failure expected");
+		} catch (GravityBulkException e) {
+			assertSame(failure, e.getCause());
+			assertEquals(3, e.getProcessedCount());
+			assertEquals(1, e.getRejectedRecords().size());
+			assertEquals(2, e.getRejectedRecords().get(0).getIndex());
+		} catch (IOException e) {
+			fail("progress expected");
+		}
+		assertEquals(Arrays.asList("r0", "r1"), sender.accepted);
+	}
+
+	@Test
+	public void testStopsAfterTooManyRejections() throws IOException, GravityRecEngException {
+		final Object[] records = { "BAD0", "BAD1", "BAD2", "BAD3", "BAD4", "BAD5", "BAD6", "BAD7" };
+		final StubSender sender = new StubSender(null, -1);
+		try {
+			GravityBulkBisector.send("addItems", records, sender, 3);
+			fail("rejected records expected");
+		} catch (GravityBulkException e) {
+			assertEquals(3, e.getRejectedRecords().size());
+			assertEquals(3, e.getProcessedCount());
+			assertEquals(records.length, e.getRecordCount());
+			assertNull(e.getCause());
+			assertTrue(e.getMessage().contains("stopped after 3 records"));
+		}
+		// [0,8), [0,4), [0,2), [0,1), [1,2), [2,4), [2,3)
+		assertEquals(7, sender.requests);
+		assertTrue(sender.accepted.isEmpty());
+	}
+}
@@ -0,0 +1,68 @@
+package com.gravityrd.recengclient.webshop;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GravityClientErrorMessageTest {
+
+	private static String repeat(char c, int count) {
+		final char[] chars = new char[count];
+		Arrays.fill(chars, c);
+		return new String(chars);
+	}
+
+	@Test
+	public void testNullAndNonArrayBodies() {
+		assertEquals("", GravityClient.describeRequest(null));
+		assertEquals("name", GravityClient.describeRequest("name"));
+		assertNull(GravityClient.abbreviate(null));
+		assertEquals("short", GravityClient.abbreviate("short"));
+	}
+
+	@Test
+	public void testAbbreviate() {
+		final String text = repeat('a', 5000);
+		assertEquals(repeat('a', 2048) + "... (5000 chars)", GravityClient.abbreviate(text));
+		assertEquals(repeat('a', 2048), GravityClient.abbreviate(repeat('a', 2048)));
+		assertEquals(repeat('a', 2048) + "... (5000 chars)", GravityClient.describeRequest(text));
+	}
+
+	@Test
+	public void testOnlyValidationErrorsAreBisected() {
+		assertTrue(GravityClient.isValidationError(400));
+		assertTrue(GravityClient.isValidationError(422));
+		assertFalse(GravityClient.isValidationError(401));
+		assertFalse(GravityClient.isValidationError(403));
+		assertFalse(GravityClient.isValidationError(500));
+		assertFalse(GravityClient.isValidationError(503));
+	}
+
+	@Test
+	public void testSmallArray() {
+		assertEquals("[a, b] (2 records)", GravityClient.describeRequest(new Object[] { "a", "b" }));
+		assertEquals("[] (0 records)", GravityClient.describeRequest(new Object[0]));
+	}
+
+	@Test
+	public void testLargeArrayIsTruncated() {
+		final Object[] records = new Object[100000];
+		Arrays.fill(records, "record");
+		final String description = GravityClient.describeRequest(records);
+		assertTrue(description.startsWith("[record, record"));
+		assertTrue(description.endsWith("...] (100000 records)"));
+		assertEquals(2048 + "...] (100000 records)".length(), description.length());
+	}
+
+	@Test
+	public void testSingleHugeRecordIsTruncated() {
+		final String description = GravityClient.describeRequest(new Object[] { repeat('x', 100000) });
+		assertEquals("[" + repeat('x', 2047) + "...] (1 records)", description);
+		assertFalse(description.contains(repeat('x', 2048)));
+	}
+}
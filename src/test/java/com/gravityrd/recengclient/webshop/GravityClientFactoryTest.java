@@ -0,0 +1,134 @@
+package com.gravityrd.recengclient.webshop;
+
+import com.gravityrd.receng.web.webshop.jsondto.GravityItem;
+import com.gravityrd.receng.web.webshop.jsondto.GravityRecEngException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GravityClientFactoryTest {
+
+	private final GravityClientFactory factory = GravityClientFactory.builder()
+			.readTimeout(1000)
+			.maxConcurrentRequestsPerTenant(4)
+			.build();
+
+	@Test
+	public void testSameClientForSameTenant() {
+		final GravityClient client = factory.getClient("http://shop1", "user", "password");
+		assertSame(client, factory.getClient("http://shop1", "user", "password"));
+		assertNotSame(client, factory.getClient("http://shop2", "user", "password"));
+		assertEquals("http://shop1", client.getRemoteUrl());
+		assertEquals(1000, client.getReadTimeout());
+	}
+
+	@Test
+	public void testPasswordChangeReplacesClient() {
+		final GravityClient client = factory.getClient("http://shop1", "user", "password");
+		final GravityClient rotated = factory.getClient("http://shop1", "user", "rotated");
+		assertNotSame(client, rotated);
+		assertEquals("rotated", rotated.getPassword());
+		assertSame(rotated, factory.getClient("http://shop1", "user", "rotated"));
+
+		assertTrue(factory.removeClient("http://shop1", "user"));
+		assertNotSame(rotated, factory.getClient("http://shop1", "user", "rotated"));
+	}
+
+	@Test
+	public void testPasswordChangeKeepsTenantState() {
+		final GravityClient client = factory.getClient("http://shop1", "user", "password");
+		client.getAvailabilityIndex().update("item1", false);
+		final GravityClient rotated = factory.getClient("http://shop1", "user", "rotated");
+		assertSame(client.getAvailabilityIndex(), rotated.getAvailabilityIndex());
+		assertFalse(rotated.getAvailabilityIndex().isAvailable("item1"));
+		assertNotSame(client.getAvailabilityIndex(), factory.getClient("http://shop2", "user", "password").getAvailabilityIndex());
+
+		assertTrue(factory.removeClient("http://shop1", "user"));
+		assertTrue(factory.getClient("http://shop1", "user", "rotated").getAvailabilityIndex().isEmpty());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testManagedClientIsImmutable() {
+		factory.getClient("http://shop1", "user", "password").setPassword("other");
+	}
+
+	@Test
+	public void testQuotaExhausted() throws Exception {
+		final CountDownLatch received = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				try (InputStream input = exchange.getRequestBody()) {
+					while (input.read() != -1) ;
+				}
+				exchange.sendResponseHeaders(200, 0);
+				received.countDown();
+				// keeps the answer streaming, so the first request holds its slot without hitting the read timeout
+				try (OutputStream output = exchange.getResponseBody()) {
+					while (!release.await(50, TimeUnit.MILLISECONDS)) {
+						output.write(' ');
+						output.flush();
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				exchange.close();
+			}
+		});
+		server.start();
+		try {
+			final GravityClientFactory limited = GravityClientFactory.builder().readTimeout(300).maxConcurrentRequestsPerTenant(1).build();
+			final String remoteUrl = "http://localhost:" + server.getAddress().getPort() + "/ws";
+			final GravityClient client = limited.getClient(remoteUrl, "user", "password");
+			final Exception[] firstFailure = new Exception[1];
+			final Thread first = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						client.addItems(new GravityItem[0], true);
+					} catch (GravityRecEngException | IOException e) {
+						firstFailure[0] = e;
+					}
+				}
+			});
+			first.start();
+			assertTrue(received.await(5, TimeUnit.SECONDS));
+			try {
+				// the client of the rotated password shares the request slot of the tenant
+				limited.getClient(remoteUrl, "user", "rotated").addItems(new GravityItem[0], true);
+				fail("no free request slot expected");
+			} catch (IOException e) {
+				assertTrue(e.getMessage().startsWith("too many concurrent requests"));
+			}
+			release.countDown();
+			first.join();
+			assertEquals(null, firstFailure[0]);
+
+			final GravityClientMetrics.MethodMetrics metrics = limited.getMetrics().getMethodMetrics("addItems");
+			assertEquals(2, metrics.getRequests());
+			assertEquals(1, metrics.getFailures());
+			assertTrue(metrics.getElapsedNanos() >= TimeUnit.MILLISECONDS.toNanos(300));
+		} finally {
+			server.stop(0);
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package com.gravityrd.recengclient.webshop;
+
+import com.gravityrd.receng.web.webshop.jsondto.GravityRecEngException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GravityClientFileImportTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final List<String> requests = new CopyOnWriteArrayList<>();
+	private final List<String> bodies = new CopyOnWriteArrayList<>();
+	/**
+	 * The index of the request answered with a validation error, -1 if all of them are accepted.
+	 */
+	private volatile int rejectedRequest = -1;
+	private HttpServer server;
+	private GravityClient client;
+	private Path file;
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				final ByteArrayOutputStream body = new ByteArrayOutputStream();
+				try (InputStream input = exchange.getRequestBody()) {
+					final byte[] buffer = new byte[4096];
+					for (int read; (read = input.read(buffer)) != -1; ) body.write(buffer, 0, read);
+				}
+				final boolean rejected = requests.size() == rejectedRequest;
+				requests.add(exchange.getRequestURI().getPath() + "?" + exchange.getRequestURI().getQuery());
+				bodies.add(new String(body.toByteArray(), UTF8));
+				final byte[] answer = (rejected ? "invalid record" : "").getBytes(UTF8);
+				exchange.sendResponseHeaders(rejected ? 400 : 200, answer.length == 0 ? -1 : answer.length);
+				try (OutputStream output = exchange.getResponseBody()) {
+					output.write(answer);
+				}
+			}
+		});
+		server.start();
+		client = new GravityClient();
+		client.setRemoteUrl("http://localhost:" + server.getAddress().getPort() + "/ws");
+		client.setUserName("user");
+		client.setPassword("password");
+		file = Files.createTempFile("items", ".json");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		server.stop(0);
+		Files.delete(file);
+	}
+
+	@Test
+	public void testJsonArray() throws IOException, GravityRecEngException {
+		write("[\n  {\"itemId\":\"1\",\"title\":\"Hörz\"} ,\n\t{\"itemId\":\"2\"},{\"itemId\":\"3\"}\n]\n");
+		assertEquals(3, client.addItemsFromFile(file, 2, true));
+		assertEquals(Arrays.asList("/ws/addItems?method=addItems&async=true", "/ws/addItems?method=addItems&async=true"), requests);
+		// the records of an array are sent with the separators between them, the non-ASCII characters as is
+		assertEquals(Arrays.asList("[{\"itemId\":\"1\",\"title\":\"Hörz\"} ,\n\t{\"itemId\":\"2\"}]", "[{\"itemId\":\"3\"}]"), bodies);
+	}
+
+	@Test
+	public void testJsonLines() throws IOException, GravityRecEngException {
+		write("{\"itemId\":\"1\",\"title\":\"Hörz\"}\r\n{\"itemId\":\"2\"}\n\n{\"itemId\":\"3\"}\n");
+		assertEquals(3, client.addItemsFromFile(file, 2, false));
+		assertEquals(Arrays.asList("/ws/addItems?method=addItems&async=false", "/ws/addItems?method=addItems&async=false"), requests);
+		assertEquals(Arrays.asList("[{\"itemId\":\"1\",\"title\":\"Hörz\"},{\"itemId\":\"2\"}]", "[{\"itemId\":\"3\"}]"), bodies);
+	}
+
+	@Test
+	public void testRejectedChunkTellsProcessedCount() throws IOException {
+		write("{\"itemId\":\"1\"}\n{\"itemId\":\"2\"}\n{\"itemId\":\"3\"}\n{\"itemId\":\"4\"}\n{\"itemId\":\"5\"}\n");
+		rejectedRequest = 1;
+		try {
+			client.addItemsFromFile(file, 2, true);
+			fail("rejected chunk expected");
+		} catch (GravityFileImportException e) {
+			assertEquals(2, e.getProcessedCount());
+			assertEquals("addItems", e.getMethodName());
+			assertEquals(file.toString(), e.getFile());
+			assertTrue(e.getCause() instanceof GravityRecEngException);
+			assertTrue(e.getMessage().startsWith("addItems stopped after 2 records of "));
+		} catch (GravityRecEngException e) {
+			fail("processed count expected");
+		}
+		assertEquals(2, requests.size());
+	}
+
+	@Test
+	public void testFirstRejectedChunkIsThrownUnchanged() throws IOException {
+		write("{\"itemId\":\"1\"}\n{\"itemId\":\"2\"}\n{\"itemId\":\"3\"}\n");
+		rejectedRequest = 0;
+		try {
+			client.addItemsFromFile(file, 2, true);
+			fail("rejected chunk expected");
+		} catch (GravityFileImportException e) {
+			fail("nothing was processed");
+		} catch (GravityRecEngException e) {
+			assertEquals(1, requests.size());
+		}
+	}
+
+	private void write(String json) throws IOException {
+		Files.write(file, json.getBytes(UTF8));
+	}
+}
@@ -0,0 +1,155 @@
+package com.gravityrd.recengclient.webshop;
+
+import com.gravityrd.receng.web.webshop.jsondto.GravityItem;
+import com.gravityrd.receng.web.webshop.jsondto.GravityItemRecommendation;
+import com.gravityrd.receng.web.webshop.jsondto.GravityRecommendationContext;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GravityItemAvailabilityIndexTest {
+
+	@Test
+	public void testUpdate() {
+		final GravityItemAvailabilityIndex index = new GravityClient().getAvailabilityIndex();
+		assertTrue(index.isEmpty());
+		assertTrue(index.isAvailable("item1"));
+
+		index.update("item1", false);
+		final Map<String, Boolean> availability = new HashMap<>();
+		availability.put("item2", false);
+		availability.put("item1", true);
+		index.update(availability);
+
+		assertTrue(index.isAvailable("item1"));
+		assertFalse(index.isAvailable("item2"));
+		assertEquals(1, index.size());
+
+		index.clear();
+		assertTrue(index.isAvailable("item2"));
+	}
+
+	@Test
+	public void testFilteredOnlyWhileIndexIsNotEmpty() {
+		final GravityClient client = new GravityClient();
+		final GravityRecommendationContext context = context(10);
+		assertFalse(client.isAvailabilityFiltered(context));
+		client.getAvailabilityIndex().update("1", false);
+		assertTrue(client.isAvailabilityFiltered(context));
+		client.setAvailabilityMargin(0);
+		assertFalse(client.isAvailabilityFiltered(context));
+	}
+
+	@Test
+	public void testMargin() {
+		final GravityClient client = new GravityClient();
+		final GravityRecommendationContext context = context(10);
+		assertEquals(12, client.withAvailabilityMargin(context).get("numberLimit").asInt());
+		assertEquals("scenario", client.withAvailabilityMargin(context).get("scenarioId").asText());
+		assertEquals(10, context.numberLimit);
+		// at least one more item is requested
+		assertEquals(3, client.withAvailabilityMargin(context(2)).get("numberLimit").asInt());
+		client.setAvailabilityMargin(50);
+		assertEquals(150, client.withAvailabilityMargin(context(100)).get("numberLimit").asInt());
+		assertEquals(Integer.MAX_VALUE, client.withAvailabilityMargin(context(Integer.MAX_VALUE - 1)).get("numberLimit").asInt());
+	}
+
+	@Test
+	public void testFilterAndTrim() {
+		final GravityClient client = new GravityClient();
+		client.getAvailabilityIndex().update("2", false);
+		final GravityItemRecommendation recommendation = recommendation("1", "2", "3", "4");
+		recommendation.predictionValues = new double[] { 0.9, 0.8, 0.7, 0.6 };
+
+		client.filterUnavailable(recommendation, 2);
+		assertArrayEquals(new String[] { "1", "3" }, recommendation.itemIds);
+		assertEquals(2, recommendation.predictionValues.length);
+		assertEquals(0.9, recommendation.predictionValues[0], 0);
+		assertEquals(0.7, recommendation.predictionValues[1], 0);
+		assertEquals(2, recommendation.items.length);
+		assertEquals("1", recommendation.items[0].itemId);
+		assertEquals("3", recommendation.items[1].itemId);
+	}
+
+	@Test
+	public void testTrimWithoutUnavailableItems() {
+		final GravityClient client = new GravityClient();
+		client.getAvailabilityIndex().update("other", false);
+		final GravityItemRecommendation recommendation = recommendation("1", "2", "3");
+		client.filterUnavailable(recommendation, 2);
+		assertArrayEquals(new String[] { "1", "2" }, recommendation.itemIds);
+		assertEquals(2, recommendation.items.length);
+	}
+
+	@Test
+	public void testItemsNotAlignedWithItemIds() {
+		final GravityClient client = new GravityClient();
+		client.getAvailabilityIndex().update("2", false);
+		final GravityItemRecommendation recommendation = recommendation("1", "2", "3");
+		recommendation.items = new GravityItem[] { item("2"), item("3") };
+		client.filterUnavailable(recommendation, 3);
+		assertArrayEquals(new String[] { "1", "3" }, recommendation.itemIds);
+		assertEquals(1, recommendation.items.length);
+		assertEquals("3", recommendation.items[0].itemId);
+	}
+
+	@Test
+	public void testNullIds() {
+		final GravityClient client = new GravityClient();
+		client.getAvailabilityIndex().update("2", false);
+		assertTrue(client.getAvailabilityIndex().isAvailable(null));
+		final GravityItemRecommendation recommendation = recommendation("1", null, "2", "3");
+		recommendation.items[0].itemId = null;
+		recommendation.predictionValues = new double[] { 0.9, 0.8, 0.7, 0.6 };
+		client.filterUnavailable(recommendation, 3);
+		assertArrayEquals(new String[] { "1", "3" }, recommendation.itemIds);
+		assertArrayEquals(new double[] { 0.9, 0.6 }, recommendation.predictionValues, 0);
+		assertEquals(1, recommendation.items.length);
+		assertEquals("3", recommendation.items[0].itemId);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUpdateNullId() {
+		new GravityClient().getAvailabilityIndex().update(null, false);
+	}
+
+	@Test
+	public void testPredictionValuesNotAlignedWithItemIds() {
+		final GravityClient client = new GravityClient();
+		client.getAvailabilityIndex().update("2", false);
+		final GravityItemRecommendation recommendation = recommendation("1", "2", "3");
+		recommendation.predictionValues = new double[] { 0.9, 0.8 };
+		client.filterUnavailable(recommendation, 3);
+		assertArrayEquals(new String[] { "1", "3" }, recommendation.itemIds);
+		assertNull(recommendation.predictionValues);
+	}
+
+	private static GravityRecommendationContext context(int numberLimit) {
+		final GravityRecommendationContext context = new GravityRecommendationContext();
+		context.scenarioId = "scenario";
+		context.numberLimit = numberLimit;
+		return context;
+	}
+
+	private static GravityItemRecommendation recommendation(String... itemIds) {
+		final GravityItemRecommendation recommendation = new GravityItemRecommendation();
+		recommendation.itemIds = itemIds;
+		recommendation.items = new GravityItem[itemIds.length];
+		for (int i = 0; i < itemIds.length; i++) recommendation.items[i] = item(itemIds[i]);
+		return recommendation;
+	}
+
+	private static GravityItem item(String itemId) {
+		final GravityItem item = new GravityItem();
+		item.itemId = itemId;
+		return item;
+	}
+}
@@ -0,0 +1,76 @@
+package com.gravityrd.recengclient.webshop;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GravityJsonFileChunkTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	@Test
+	public void testJsonArray() throws IOException {
+		final String json = "[\n  {\"itemId\":\"1\",\"title\":\"Hörz, ]\"} ,\n\t{\"itemId\":\"2\"},{\"itemId\":\"3\",\"nameValues\":[{\"name\":\"a\",\"value\":\"b\"}]}\n]\n";
+		assertChunks(json, Arrays.asList(Arrays.asList("1", "2"), Arrays.asList("3")));
+	}
+
+	@Test
+	public void testJsonLines() throws IOException {
+		final String json = "{\"itemId\":\"1\",\"title\":\"Hörz, ]\"}\r\n{\"itemId\":\"2\"}\n\n{\"itemId\":\"3\",\"nameValues\":[{\"name\":\"a\",\"value\":\"b\"}]}\n";
+		assertChunks(json, Arrays.asList(Arrays.asList("1", "2"), Arrays.asList("3")));
+	}
+
+	/**
+	 * Splits the file in chunks of 2 records, checks the length and the content of each written chunk.
+	 */
+	private static void assertChunks(String json, List<List<String>> expectedItemIds) throws IOException {
+		final Path file = Files.createTempFile("records", ".json");
+		try {
+			Files.write(file, json.getBytes(UTF8));
+			final List<List<String>> itemIds = new ArrayList<>();
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				final GravityJsonRecordScanner scanner = new GravityJsonRecordScanner(channel);
+				final GravityJsonFileChunk chunk = new GravityJsonFileChunk(file, channel, 2);
+				boolean hasRecord = scanner.nextRecord();
+				while (hasRecord) {
+					chunk.add(scanner.getRecordStart(), scanner.getRecordEnd(), scanner.isArray());
+					hasRecord = scanner.nextRecord();
+					if (chunk.size() == 2 || !hasRecord) {
+						itemIds.add(write(chunk));
+						chunk.clear(0);
+					}
+				}
+			}
+			assertEquals(expectedItemIds, itemIds);
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	private static List<String> write(GravityJsonFileChunk chunk) throws IOException {
+		final ByteArrayOutputStream output = new ByteArrayOutputStream();
+		chunk.writeTo(output);
+		assertEquals(chunk.getLength(), output.size());
+		final JsonNode array = new ObjectMapper().readTree(output.toByteArray());
+		assertTrue(array.isArray());
+		assertEquals(chunk.size(), array.size());
+		final List<String> itemIds = new ArrayList<>();
+		for (JsonNode record : array) itemIds.add(record.get("itemId").asText());
+		return itemIds;
+	}
+}
@@ -0,0 +1,74 @@
+package com.gravityrd.recengclient.webshop;
+
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GravityJsonRecordScannerTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	@Test
+	public void testJsonArray() throws IOException {
+		final String json = "[ {\"itemId\":\"1\",\"title\":\"a } \\\" [\"},\n {\"itemId\":\"2\",\"nameValues\":[{\"name\":\"n\",\"value\":\"Hörz\"}]} ]";
+		final List<String> records = new ArrayList<>();
+		assertTrue(scan(json, records));
+		assertEquals(2, records.size());
+		assertEquals("{\"itemId\":\"1\",\"title\":\"a } \\\" [\"}", records.get(0));
+		assertEquals("{\"itemId\":\"2\",\"nameValues\":[{\"name\":\"n\",\"value\":\"Hörz\"}]}", records.get(1));
+	}
+
+	@Test
+	public void testJsonLines() throws IOException {
+		final String json = "\uFEFF{\"userId\":\"1\"}\r\n{\"userId\":\"2\"}\n\n";
+		final List<String> records = new ArrayList<>();
+		assertFalse(scan(json, records));
+		assertEquals(2, records.size());
+		assertEquals("{\"userId\":\"2\"}", records.get(1));
+	}
+
+	@Test
+	public void testEmptyArray() throws IOException {
+		final List<String> records = new ArrayList<>();
+		scan(" [ ] ", records);
+		assertEquals(0, records.size());
+	}
+
+	@Test(expected = EOFException.class)
+	public void testUnterminatedRecord() throws IOException {
+		scan("[{\"itemId\":\"1\"", new ArrayList<String>());
+	}
+
+	/**
+	 * @return whether the file is a JSON array
+	 */
+	private static boolean scan(String json, List<String> records) throws IOException {
+		final Path file = Files.createTempFile("records", ".json");
+		try {
+			final byte[] bytes = json.getBytes(UTF8);
+			Files.write(file, bytes);
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				final GravityJsonRecordScanner scanner = new GravityJsonRecordScanner(channel);
+				while (scanner.nextRecord()) {
+					final int start = (int) scanner.getRecordStart();
+					records.add(new String(bytes, start, (int) scanner.getRecordEnd() - start, UTF8));
+				}
+				return scanner.isArray();
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
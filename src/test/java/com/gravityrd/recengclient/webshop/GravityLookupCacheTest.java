@@ -0,0 +1,132 @@
+package com.gravityrd.recengclient.webshop;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class GravityLookupCacheTest {
+
+	@Test
+	public void testInvalidate() {
+		final GravityLookupCache cache = new GravityLookupCache(10, 60000);
+		cache.put("userId:1", "user", "user1", cache.getInvalidationStamp("userId:1"));
+		cache.put("userId:1", "events:0", "events1", cache.getInvalidationStamp("userId:1"));
+		cache.put("cookieId:1", "user", "user2", cache.getInvalidationStamp("cookieId:1"));
+		assertEquals("user1", cache.get("userId:1", "user"));
+
+		cache.invalidate("userId:1");
+		assertNull(cache.get("userId:1", "user"));
+		assertNull(cache.get("userId:1", "events:0"));
+		assertEquals("user2", cache.get("cookieId:1", "user"));
+	}
+
+	@Test
+	public void testAnswerFetchedBeforeInvalidationIsDropped() {
+		final GravityLookupCache cache = new GravityLookupCache(10, 60000);
+		final long stamp = cache.getInvalidationStamp("userId:1");
+		cache.invalidate("userId:1");
+		cache.put("userId:1", "user", "user1", stamp);
+		assertNull(cache.get("userId:1", "user"));
+	}
+
+	@Test
+	public void testInvalidationOfOtherIdentityKeepsAnswer() {
+		final GravityLookupCache cache = new GravityLookupCache(10, 60000);
+		final long stamp = cache.getInvalidationStamp("userId:1");
+		cache.invalidate("userId:2");
+		cache.put("userId:1", "user", "user1", stamp);
+		assertEquals("user1", cache.get("userId:1", "user"));
+	}
+
+	@Test
+	public void testOptOutDropsAnswersCachedByCookie() throws Exception {
+		final AtomicInteger getUserRequests = new AtomicInteger();
+		final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				final boolean getUser = exchange.getRequestURI().getPath().endsWith("/getUser");
+				if (getUser) getUserRequests.incrementAndGet();
+				final byte[] answer = (getUser ? "{\"userId\":\"user1\"}" : "").getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(200, answer.length == 0 ? -1 : answer.length);
+				try (OutputStream output = exchange.getResponseBody()) {
+					output.write(answer);
+				}
+			}
+		});
+		server.start();
+		try {
+			final GravityClient client = new GravityClient();
+			client.setRemoteUrl("http://localhost:" + server.getAddress().getPort() + "/ws");
+			client.setUserName("user");
+			client.setPassword("password");
+			client.setLookupCacheSize(10);
+			assertEquals("user1", client.getUserByCookieId("cookie1").userId);
+			assertEquals("user1", client.getUserByCookieId("cookie1").userId);
+			assertEquals(1, getUserRequests.get());
+
+			client.optOutUser("user1");
+			assertEquals("user1", client.getUserByCookieId("cookie1").userId);
+			assertEquals(2, getUserRequests.get());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void testEvictsOldest() {
+		final GravityLookupCache cache = new GravityLookupCache(2, 60000);
+		for (int i = 0; i < 3; i++) {
+			cache.put("userId:" + i, "user", "user" + i, cache.getInvalidationStamp("userId:" + i));
+		}
+		assertEquals(2, cache.size());
+		assertNull(cache.get("userId:0", "user"));
+		assertEquals("user2", cache.get("userId:2", "user"));
+	}
+
+	@Test
+	public void testExpires() throws InterruptedException {
+		final GravityLookupCache cache = new GravityLookupCache(10, 1);
+		cache.put("userId:1", "user", "user1", cache.getInvalidationStamp("userId:1"));
+		Thread.sleep(5);
+		assertNull(cache.get("userId:1", "user"));
+	}
+
+	@Test
+	public void testConcurrentInvalidationDropsAnswerFetchedBefore() throws Exception {
+		final GravityLookupCache cache = new GravityLookupCache(10, 60000);
+		final CyclicBarrier barrier = new CyclicBarrier(2);
+		for (int i = 0; i < 2000; i++) {
+			// the answer is fetched before the write, so whatever the interleaving it must not remain cached
+			final long stamp = cache.getInvalidationStamp("userId:1");
+			final Thread writer = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						barrier.await();
+					} catch (Exception e) {
+						throw new IllegalStateException(e);
+					}
+					cache.invalidate("userId:1");
+				}
+			});
+			writer.start();
+			barrier.await();
+			cache.put("userId:1", "user", "stale" + i, stamp);
+			writer.join();
+			assertNull(cache.get("userId:1", "user"));
+		}
+	}
+}
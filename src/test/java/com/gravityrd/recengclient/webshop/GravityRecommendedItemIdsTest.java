@@ -0,0 +1,54 @@
+package com.gravityrd.recengclient.webshop;
+
+import com.fasterxml.jackson.core.JsonParseException;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class GravityRecommendedItemIdsTest {
+
+	private static final String ANSWER = "{\"items\":[{\"itemId\":\"1\",\"nameValues\":[{\"name\":\"title\",\"value\":\"a\"}]}],"
+			+ "\"itemIds\":[\"1\",\"2\",\"3\"],\"predictionValues\":[0.5,0.4,0.3],\"facets\":{\"color\":{\"buckets\":[]}},"
+			+ "\"recommendationId\":\"rec1\"}";
+
+	@Test
+	public void testReadItemIds() throws IOException {
+		final GravityRecommendedItemIds result = new GravityRecommendedItemIds();
+		GravityClient.readItemIds(stream(ANSWER), result, null, Integer.MAX_VALUE);
+		assertEquals("rec1", result.getRecommendationId());
+		assertArrayEquals(new String[] { "1", "2", "3" }, result.toArray());
+	}
+
+	@Test
+	public void testReadItemIdsFiltered() throws IOException {
+		final GravityItemAvailabilityIndex index = new GravityClient().getAvailabilityIndex();
+		index.update("1", false);
+		final GravityRecommendedItemIds result = new GravityRecommendedItemIds();
+		GravityClient.readItemIds(stream(ANSWER), result, index, 1);
+		assertArrayEquals(new String[] { "2" }, result.toArray());
+	}
+
+	@Test
+	public void testNullItemIdsAreSkipped() throws IOException {
+		final GravityRecommendedItemIds result = new GravityRecommendedItemIds();
+		GravityClient.readItemIds(stream("{\"itemIds\":[\"1\",null,2],\"recommendationId\":null}"), result, null, Integer.MAX_VALUE);
+		assertArrayEquals(new String[] { "1", "2" }, result.toArray());
+		assertEquals(null, result.getRecommendationId());
+	}
+
+	@Test(expected = JsonParseException.class)
+	public void testInvalidItemId() throws IOException {
+		GravityClient.readItemIds(stream("{\"itemIds\":[\"1\",{\"itemId\":\"2\"}]}"), new GravityRecommendedItemIds(), null, Integer.MAX_VALUE);
+	}
+
+	private static InputStream stream(String json) {
+		return new ByteArrayInputStream(json.getBytes(Charset.forName("UTF-8")));
+	}
+}